@@ -14,6 +14,9 @@ CREATE TABLE IF NOT EXISTS Tokens (
 
 CREATE TABLE IF NOT EXISTS Documents (
     DocumentID int not null,
+    ExternalID int not null,
+    HighestTermFreq int not null,
+    Length int not null,
     Title varchar(100) not null,
     Path varchar(255) not null
 );
@@ -24,6 +27,17 @@ CREATE TABLE IF NOT EXISTS Intersection (
     Frequency int not null
 );
 
+CREATE TABLE IF NOT EXISTS Titles (
+    TokenFK int not null,
+    DocumentID int not null
+);
+
+CREATE TABLE IF NOT EXISTS Positions (
+    TokenFK int not null,
+    DocumentID int not null,
+    Positions text not null
+);
+
 -- ----------------- --
 -- Add Primary Keys --
 -- ----------------- --
@@ -37,6 +51,12 @@ ADD PRIMARY KEY (DocumentID);
 ALTER TABLE Intersection
 ADD PRIMARY KEY (TokenFK, DocumentID);
 
+ALTER TABLE Titles
+ADD PRIMARY KEY (TokenFK, DocumentID);
+
+ALTER TABLE Positions
+ADD PRIMARY KEY (TokenFK, DocumentID);
+
 -- ----------------- --
 -- Create FK Indexes --
 -- ----------------- --
@@ -56,6 +76,18 @@ ALTER TABLE Intersection
 ADD CONSTRAINT Intersection_FK2 FOREIGN KEY
 (DocumentID) REFERENCES Documents (DocumentID);
 
+ALTER TABLE Titles
+ADD CONSTRAINT Titles_FK1 FOREIGN KEY
+(TokenFK) REFERENCES Tokens (TokenPK);
+
+ALTER TABLE Titles
+ADD CONSTRAINT Titles_FK2 FOREIGN KEY
+(DocumentID) REFERENCES Documents (DocumentID);
+
+ALTER TABLE Positions
+ADD CONSTRAINT Positions_FK1 FOREIGN KEY
+(TokenFK, DocumentID) REFERENCES Intersection (TokenFK, DocumentID);
+
 -- ----------- --
 -- Add Indexes --
 -- ----------- --
@@ -0,0 +1,36 @@
+package cs437.bsu.search.engine.container;
+
+import java.util.Arrays;
+
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList(){
+        this(16);
+    }
+
+    public IntList(int capacity){
+        this.values = new int[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    public void add(int value){
+        if(size == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[size++] = value;
+    }
+
+    public int get(int index){
+        return values[index];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int[] toArray(){
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,276 @@
+package cs437.bsu.search.engine.container;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Immutable dictionary of terms, each given an ID in the order added. All terms
+ * are kept in one byte arena and found through an open-addressing hash table, so
+ * a lookup is a single probe sequence over arrays without hashing into boxed keys
+ * or allocating. Terms are stored one byte per character and may only hold
+ * characters up to U+00FF.
+ * <p>
+ * Dictionaries are created with a {@link Builder}, which can also be used on its
+ * own when terms are added and looked up as they are found.
+ * @author Cade Peterson
+ */
+public class TermDictionary {
+
+    private int[] table;
+    private int[] offsets;
+    private byte[] arena;
+    private int mask;
+
+    /**
+     * Creates a dictionary from its parts.
+     * @param table Hash table of term ID + 1, 0 being an empty slot.
+     * @param offsets Start of each term in the arena, with one extra end offset.
+     * @param arena Bytes of all terms.
+     */
+    private TermDictionary(int[] table, int[] offsets, byte[] arena){
+        this.table = table;
+        this.offsets = offsets;
+        this.arena = arena;
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * Finds the ID of a term.
+     * @param term Term to look up.
+     * @return ID of the term or -1 if not found.
+     */
+    public int indexOf(CharSequence term){
+        return find(table, mask, offsets, arena, term);
+    }
+
+    /**
+     * Gets a term by its ID.
+     * @param id ID of the term.
+     * @return Term.
+     */
+    public String getTerm(int id){
+        return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Number of terms in the dictionary.
+     * @return Term count.
+     */
+    public int size(){
+        return offsets.length - 1;
+    }
+
+    /**
+     * Estimates the heap memory used by the dictionary.
+     * @return Bytes used.
+     */
+    public long estimateSize(){
+        return 3 * 16 + 4L * (table.length + offsets.length) + arena.length;
+    }
+
+    /**
+     * Writes the dictionary to a stream.
+     * @param out Stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 4 * (table.length + offsets.length));
+        buffer.putInt(table.length).putInt(offsets.length).putInt(arena.length);
+        buffer.asIntBuffer().put(table).put(offsets);
+        out.write(buffer.array());
+        out.write(arena);
+    }
+
+    /**
+     * Reads a dictionary written by {@link #writeTo(DataOutputStream)}.
+     * @param in Stream to read from.
+     * @return Dictionary read.
+     * @throws IOException If reading fails.
+     */
+    public static TermDictionary readFrom(DataInputStream in) throws IOException {
+        int[] table = new int[in.readInt()];
+        int[] offsets = new int[in.readInt()];
+        byte[] arena = new byte[in.readInt()];
+
+        byte[] ints = new byte[4 * (table.length + offsets.length)];
+        in.readFully(ints);
+        ByteBuffer.wrap(ints).asIntBuffer().get(table).get(offsets);
+        in.readFully(arena);
+        return new TermDictionary(table, offsets, arena);
+    }
+
+    /**
+     * Probes a hash table for a term.
+     * @param table Hash table of term ID + 1.
+     * @param mask Table length - 1.
+     * @param offsets Start of each term in the arena.
+     * @param arena Bytes of all terms.
+     * @param term Term to look up.
+     * @return ID of the term or -1 if not found.
+     */
+    private static int find(int[] table, int mask, int[] offsets, byte[] arena, CharSequence term){
+        int len = term.length();
+        for(int slot = hash(term) & mask; table[slot] != 0; slot = (slot + 1) & mask){
+            int id = table[slot] - 1;
+            int start = offsets[id];
+            if(offsets[id + 1] - start != len)
+                continue;
+
+            int i = 0;
+            while(i < len && (arena[start + i] & 0xFF) == term.charAt(i))
+                i++;
+
+            if(i == len)
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * FNV-1a hash over the characters of a term.
+     * @param term Term to hash.
+     * @return Hash value.
+     */
+    private static int hash(CharSequence term){
+        int h = 0x811C9DC5;
+        for(int i = 0; i < term.length(); i++){
+            h ^= term.charAt(i);
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Same hash as {@link #hash(CharSequence)} over a term in the arena.
+     * @param arena Bytes of all terms.
+     * @param start Start of the term.
+     * @param end End of the term, exclusive.
+     * @return Hash value.
+     */
+    private static int hash(byte[] arena, int start, int end){
+        int h = 0x811C9DC5;
+        for(int i = start; i < end; i++){
+            h ^= arena[i] & 0xFF;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Adds terms and builds a {@link TermDictionary}. Terms can be
+     * looked up while adding, giving each unique term the next ID.
+     */
+    public static class Builder {
+
+        private int[] table;
+        private int[] offsets;
+        private byte[] arena;
+        private int size;
+        private int arenaSize;
+
+        /** Creates an empty Builder. */
+        public Builder(){
+            this(16);
+        }
+
+        /**
+         * Creates an empty Builder.
+         * @param expectedSize Number of terms expected to be added.
+         */
+        public Builder(int expectedSize){
+            table = new int[Integer.highestOneBit(Math.max(expectedSize, 4) * 2) * 2];
+            offsets = new int[Math.max(expectedSize, 4) + 1];
+            arena = new byte[Math.max(expectedSize, 4) * 8];
+        }
+
+        /**
+         * Finds the ID of a term added so far.
+         * @param term Term to look up.
+         * @return ID of the term or -1 if not found.
+         */
+        public int indexOf(CharSequence term){
+            return find(table, table.length - 1, offsets, arena, term);
+        }
+
+        /**
+         * Adds a term if not already added.
+         * @param term Term to add.
+         * @return ID of the term.
+         * @throws IllegalArgumentException If the term has a character above U+00FF.
+         */
+        public int add(String term){
+            int id = indexOf(term);
+            if(id >= 0)
+                return id;
+
+            int len = term.length();
+            if(arenaSize + len > arena.length)
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + len));
+            for(int i = 0; i < len; i++){
+                char c = term.charAt(i);
+                if(c > 0xFF)
+                    throw new IllegalArgumentException("Term has a character above U+00FF: " + term);
+                arena[arenaSize + i] = (byte) c;
+            }
+
+            if(size + 2 > offsets.length)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            id = size++;
+            offsets[id] = arenaSize;
+            arenaSize += len;
+            offsets[size] = arenaSize;
+
+            if(size * 2 > table.length)
+                rehash(table.length * 2);
+            else
+                insert(table, id, hash(term));
+            return id;
+        }
+
+        /**
+         * Gets a term by its ID.
+         * @param id ID of the term.
+         * @return Term.
+         */
+        public String getTerm(int id){
+            return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Number of terms added.
+         * @return Term count.
+         */
+        public int size(){
+            return size;
+        }
+
+        /**
+         * Builds the dictionary. The Builder can keep being used afterwards.
+         * @return Built dictionary.
+         */
+        public TermDictionary build(){
+            int[] built = new int[Integer.highestOneBit(Math.max(size, 1) * 2) * 2];
+            for(int id = 0; id < size; id++)
+                insert(built, id, hash(arena, offsets[id], offsets[id + 1]));
+            return new TermDictionary(built, Arrays.copyOf(offsets, size + 1), Arrays.copyOf(arena, arenaSize));
+        }
+
+        private void rehash(int tableSize){
+            table = new int[tableSize];
+            for(int id = 0; id < size; id++)
+                insert(table, id, hash(arena, offsets[id], offsets[id + 1]));
+        }
+
+        private static void insert(int[] table, int id, int hash){
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while(table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cs437.bsu.search.engine.corpus;
+
+import cs437.bsu.search.engine.corpus.TextScanner.AnalyzerProfile;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import edu.stanford.nlp.pipeline.CoreDocument;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Benchmarks the {@link AnalyzerProfile Analyzer Profiles} against a sample of
+ * a corpus. For each profile the throughput in tokens per second is reported
+ * along with how the cleaned token sets differ from the {@link AnalyzerProfile#Full Full}
+ * profile, which is the output the index has always been built with.
+ * @author Cade Peterson
+ */
+public class AnalyzerBenchmark {
+
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(AnalyzerBenchmark.class);
+
+    /** Property for the number of documents to sample from the corpus. */
+    public static final String SAMPLE_SIZE_PROP = "analyzer.benchmark.docs";
+
+    private List<File> files;
+
+    /**
+     * Creates a benchmark over a sample of the corpus.
+     * @param corpusDir Directory holding the corpus documents.
+     * @throws IOException If the corpus directory fails to be listed.
+     */
+    public AnalyzerBenchmark(File corpusDir) throws IOException {
+        int sampleSize = Integer.parseInt(System.getProperty(SAMPLE_SIZE_PROP, "100"));
+        File[] all = corpusDir.listFiles(File::isFile);
+        if(all == null)
+            throw new IOException("Failed to list corpus documents: " + corpusDir);
+        Arrays.sort(all);
+        files = Arrays.asList(all).subList(0, Math.min(sampleSize, all.length));
+        LOGGER.info("Benchmarking analyzer profiles over {} document(s).", files.size());
+    }
+
+    /** Runs every profile over the sample and prints the results. */
+    public void run(){
+        TextScanner ts = TextScanner.getInstance();
+
+        List<StringBuilder> texts = new ArrayList<>();
+        for(File f : files)
+            texts.add(new Document(f).readText());
+
+        List<Set<String>> baseline = null;
+        System.out.printf("%-14s %10s %10s %12s %10s %10s %8s%n",
+                "Profile", "Tokens", "Seconds", "Tokens/Sec", "Added", "Missing", "Jaccard");
+
+        for(AnalyzerProfile profile : AnalyzerProfile.values()){
+            // Loads the pipeline so model loading isn't timed.
+            ts.scan("Warm up the pipeline.", profile);
+
+            long tokens = 0;
+            long nlpTime = 0;
+            List<Set<String>> tokenSets = new ArrayList<>();
+            for(StringBuilder text : texts){
+                long start = System.nanoTime();
+                CoreDocument doc = ts.scan(text, profile);
+                nlpTime += System.nanoTime() - start;
+
+                tokens += doc.tokens().size();
+                tokenSets.add(new HashSet<>(ts.getDocTokens(doc).keySet()));
+            }
+
+            if(baseline == null)
+                baseline = tokenSets;
+
+            long added = 0;
+            long missing = 0;
+            double jaccard = 0;
+            for(int i = 0; i < tokenSets.size(); i++){
+                Set<String> base = baseline.get(i);
+                Set<String> curr = tokenSets.get(i);
+
+                int shared = 0;
+                for(String s : curr) {
+                    if (base.contains(s))
+                        shared++;
+                }
+                added += curr.size() - shared;
+                missing += base.size() - shared;
+
+                int union = base.size() + curr.size() - shared;
+                jaccard += union == 0 ? 1 : shared / (double) union;
+            }
+
+            double seconds = nlpTime / 1_000_000_000d;
+            System.out.printf("%-14s %10d %10.2f %12.0f %10d %10d %8.4f%n", profile, tokens, seconds,
+                    tokens / Math.max(seconds, 1e-9), added, missing, jaccard / Math.max(tokenSets.size(), 1));
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package cs437.bsu.search.engine.corpus;
 
+import cs437.bsu.search.engine.corpus.create.IndexingStats;
 import cs437.bsu.search.engine.index.IndexCreator;
 import cs437.bsu.search.engine.util.LoggerInitializer;
 import cs437.bsu.search.engine.util.TaskExecutor;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.CoreDocument;
+import edu.stanford.nlp.pipeline.CoreSentence;
 import org.slf4j.Logger;
 
 import java.io.*;
@@ -19,7 +22,13 @@ public class Document {
 
     private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(Document.class);
 
+    /** Length of the label before the title on the first line of a document. */
+    private static final int TITLE_PREFIX_LENGTH = 7;
+
     private Collection<Token> tokens;
+    private List<Token> titleTokens;
+    private int titleLineLength;
+    private String summary;
     private File file;
     private String title;
     private int id;
@@ -54,38 +63,131 @@ public class Document {
     public void parse(){
         LOGGER.debug("Starting to Parse Document: {}", id);
         TaskExecutor.StartTask(() -> {
-            StringBuilder sb = new StringBuilder();
-
-            // Gathers the document title and body contents
-            try(BufferedReader br = new BufferedReader(new FileReader(file))){
-                String line;
-                for(int i = 0; (line = br.readLine()) != null; i++){
-                    if(i == 0) {
-                        title = line.substring(7);
-                        if(title.length() > 120)
-                            title = title.substring(0, 116) + " ...";
-
-                        LOGGER.trace("Found title to document. Title={},Document={}", title, id);
-                        sb.append(line + " ");
-                    }else if(i > 1) {
-                        sb.append(line + " ");
-                    }
-                }
-            } catch (IOException e) {
-                LOGGER.atError().setCause(e).log("Failed to parse Document fully: {}", getDocumentPath());
+            try{
+                long start = System.nanoTime();
+                StringBuilder sb = readText();
+                TextScanner s = TextScanner.getInstance();
+
+                LOGGER.trace("General document scan complete. Starting deeper scan.");
+                CoreDocument doc = s.scan(sb, s.getIndexProfile());
+
+                LOGGER.trace("Deeper scan complete. Starting token cleaning.");
+                tokens = s.getDocTokens(doc).values();
+                titleTokens = findTitleTokens(doc);
+                summary = buildSummary(doc, titleLineLength + 1, s.getIndexProfile().hasSentences(), IndexCreator.getSummaryLimit());
+                if(summary != null)
+                    LOGGER.trace("Summary kept for document. Length={},Document={}", summary.length(), id);
+
+                LOGGER.trace("Token cleaning complete.");
+                LOGGER.info("Tokens found in Document: {}", tokens.size());
+                IndexingStats.getInstance().documentParsed(System.nanoTime() - start);
+            }catch (RuntimeException e){
+                // Saved as a document without tokens so it isn't waited on forever
+                LOGGER.atError().setCause(e).log("Failed to parse Document: {}", getDocumentPath());
+                tokens = Collections.emptyList();
+                titleTokens = Collections.emptyList();
+                summary = null;
             }
+        }, () -> {parsedData = true;});
+    }
 
-            TextScanner s = TextScanner.getInstance();
+    /**
+     * Finds the tokens found in the title. The title is scanned as part of the
+     * body so its tokens are the ones with a position among the CoreNLP tokens
+     * of the first line, after the label before the title.
+     * @param doc Scanned document.
+     * @return Tokens found in the title.
+     */
+    private List<Token> findTitleTokens(CoreDocument doc){
+        int start = -1;
+        int end = 0;
+        List<CoreLabel> labels = doc.tokens();
+        for(int i = 0; i < labels.size() && labels.get(i).beginPosition() < titleLineLength; i++){
+            if(start < 0 && labels.get(i).beginPosition() >= TITLE_PREFIX_LENGTH)
+                start = i;
+            end = i + 1;
+        }
 
-            LOGGER.trace("General document scan complete. Starting deeper scan.");
-            CoreDocument doc = s.scan(sb);
+        List<Token> found = new ArrayList<>();
+        if(start < 0)
+            return found;
 
-            LOGGER.trace("Deeper scan complete. Starting token cleaning.");
-            tokens = s.getDocTokens(doc, s::removeStopwords, s::removeNonDictionaryTerms, s::removeIllegalPatterns, s::removeLongShortTokens).values();
+        for(Token t : tokens){
+            if(t.isFoundWithin(start, end))
+                found.add(t);
+        }
+        LOGGER.trace("Tokens found in title: {}", found.size());
+        return found;
+    }
 
-            LOGGER.trace("Token cleaning complete.");
-            LOGGER.info("Tokens found in Document: {}", tokens.size());
-        }, () -> {parsedData = true;});
+    /**
+     * Builds the text kept for snippets. This is the body of the document with one
+     * sentence per line, cut off once the limit of characters are kept. If the index
+     * profile doesn't split sentences the body is kept as one line. The text is taken
+     * from the {@link TextScanner#normalize(String) normalized} text that was scanned,
+     * which the token offsets point into.
+     * @param doc Scanned document.
+     * @param bodyStart Offset of the body within the scanned text.
+     * @param hasSentences True if the document was split into sentences.
+     * @param limit Characters to keep, see {@link IndexCreator#getSummaryLimit()}.
+     * @return Summary of the document or null if summaries aren't kept.
+     */
+    static String buildSummary(CoreDocument doc, int bodyStart, boolean hasSentences, int limit){
+        if(limit == 0)
+            return null;
+
+        String text = doc.text();
+        bodyStart = Math.min(bodyStart, text.length());
+        if(!hasSentences)
+            return text.substring(bodyStart, Math.min(text.length(), bodyStart + limit)).trim();
+
+        StringBuilder summary = new StringBuilder();
+        for(CoreSentence cs : doc.sentences()){
+            List<CoreLabel> labels = cs.tokens();
+            if(labels.isEmpty())
+                continue;
+
+            // The first sentence may start in the title line
+            int end = labels.get(labels.size() - 1).endPosition();
+            if(end <= bodyStart)
+                continue;
+
+            int begin = Math.max(labels.get(0).beginPosition(), bodyStart);
+            end = Math.min(end, begin + limit - summary.length());
+            summary.append(text, begin, end).append('\n');
+            if(summary.length() >= limit)
+                break;
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Reads the document file gathering its title and body contents.
+     * The title is kept as part of the body text.
+     * @return Text of the document to scan.
+     */
+    public StringBuilder readText(){
+        StringBuilder sb = new StringBuilder();
+        try(BufferedReader br = new BufferedReader(new FileReader(file))){
+            String line;
+            for(int i = 0; (line = br.readLine()) != null; i++){
+                if(i == 0) {
+                    // Measured as scanned so it compares with the token offsets
+                    titleLineLength = TextScanner.normalize(line).length();
+                    title = line.substring(TITLE_PREFIX_LENGTH);
+                    if(title.length() > 120)
+                        title = title.substring(0, 116) + " ...";
+
+                    LOGGER.trace("Found title to document. Title={},Document={}", title, id);
+                    sb.append(line + " ");
+                }else if(i > 1) {
+                    sb.append(line + " ");
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.atError().setCause(e).log("Failed to parse Document fully: {}", getDocumentPath());
+        }
+        return sb;
     }
 
     /**
@@ -103,18 +205,32 @@ public class Document {
     public void saveData(boolean lastDoc) {
         LOGGER.debug("Adding Document to DML: {}", id);
 
+        // No need to save document as it has not valid tokens
+        if(tokens.isEmpty())
+            return;
+
+        long start = System.nanoTime();
+        IndexCreator ic = IndexCreator.getInstance();
+        int ordinal = ic.nextDocOrdinal();
+
         int largestFreq = 0;
+        int length = 0;
         Iterator<Token> it = tokens.iterator();
         while (it.hasNext()) {
             Token t = it.next();
             if(t.getFrequency() > largestFreq)
                 largestFreq = t.getFrequency();
-            t.saveData(id, lastDoc && !it.hasNext());
+            length += t.getFrequency();
+            t.saveData(ordinal, lastDoc && !it.hasNext());
         }
 
-        // No need to save document as it has not valid tokens
-        if(largestFreq > 0)
-            IndexCreator.getInstance().saveDocumentData(largestFreq, this, lastDoc);
+        ic.saveDocumentData(ordinal, largestFreq, length, this, lastDoc);
+        ic.saveTitleData(ordinal, titleTokens);
+        if(summary != null) {
+            ic.saveSummary(ordinal, summary);
+            summary = null;
+        }
+        IndexingStats.getInstance().documentSaved(tokens.size(), System.nanoTime() - start);
     }
 
     /**
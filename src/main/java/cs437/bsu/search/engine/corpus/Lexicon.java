@@ -0,0 +1,198 @@
+package cs437.bsu.search.engine.corpus;
+
+import cs437.bsu.search.engine.container.TermDictionary;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact immutable lookup of the stop words and dictionary words used by the
+ * {@link TextScanner}. The words are kept in a {@link TermDictionary} with the
+ * flags of each word in an array indexed by its ID, so a lookup is a single
+ * probe sequence over arrays without hashing into boxed keys or allocating.
+ * <p>
+ * The lexicon is compiled from the text resources when the project is built
+ * (see {@link #main(String[])}) and loaded with one read from {@value #LEXICON_RES}.
+ * If the compiled resource is missing it's compiled from the text resources instead.
+ * @author Cade Peterson
+ */
+public class Lexicon {
+
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(Lexicon.class);
+    private static final String LEXICON_RES = "lexicon.bin";
+    private static final String DICTIONARY_RES = "dictionary.txt";
+    private static final int MAGIC = 0x4C455832; // LEX2
+
+    /** Flag for a stop word. */
+    public static final byte STOPWORD = 1;
+    /** Flag for a dictionary word. */
+    public static final byte DICTIONARY = 2;
+
+    /**
+     * Various Stop word lists that are available.
+     */
+    private enum StopwordLists{
+        /** Very Common stopwords **/
+        General         ("general-stopwords.txt"),
+        /** Common stopwords **/
+        More            ("more-stopwords.txt"),
+        /** Extra stopwords **/
+        Extra           ("extra-stopwords.txt"),
+        /** Wiki specific stopwords **/
+        Wiki_Specific   ("wiki-specific-stopwords.txt");
+
+        private String resourceFileName;
+
+        /**
+         * Constructs an enum with the stopword resource name.
+         * @param fileName resource name found in jar artifact.
+         */
+        private StopwordLists(String fileName){
+            this.resourceFileName = fileName;
+        }
+    }
+
+    private TermDictionary words;
+    private byte[] flags;
+
+    /**
+     * Creates a Lexicon from its compiled parts.
+     * @param words Words of the Lexicon.
+     * @param flags Flags of each word by its ID.
+     */
+    private Lexicon(TermDictionary words, byte[] flags){
+        this.words = words;
+        this.flags = flags;
+    }
+
+    /**
+     * Loads the compiled Lexicon resource. If not found the
+     * Lexicon is compiled from the text resources.
+     * @return Loaded Lexicon.
+     */
+    public static Lexicon load(){
+        try(InputStream resource = Lexicon.class.getResourceAsStream(LEXICON_RES)){
+            if(resource != null) {
+                LOGGER.info("Loading compiled lexicon.");
+                return read(resource.readAllBytes());
+            }
+        }catch (IOException e){
+            LOGGER.error("Failed to load compiled lexicon.", e);
+        }
+
+        LOGGER.warn("No compiled lexicon found. Compiling it from the word lists.");
+        return compile();
+    }
+
+    /**
+     * Gets the flags of a word.
+     * @param word Word to look up.
+     * @return {@link #STOPWORD} and/or {@link #DICTIONARY} flags, or 0 if not found.
+     */
+    public byte getFlags(String word){
+        int id = words.indexOf(word);
+        return id < 0 ? 0 : flags[id];
+    }
+
+    /**
+     * Number of words in the Lexicon.
+     * @return Word count.
+     */
+    public int size(){
+        return flags.length;
+    }
+
+    /**
+     * Compiles the Lexicon from the stop word and dictionary text resources.
+     * Words that aren't ASCII are skipped as scanned text is always ASCII.
+     * @return Compiled Lexicon.
+     */
+    private static Lexicon compile(){
+        Map<String, Byte> words = new LinkedHashMap<>();
+        for(StopwordLists sl : StopwordLists.values())
+            readWords(sl.resourceFileName, STOPWORD, words);
+        readWords(DICTIONARY_RES, DICTIONARY, words);
+
+        TermDictionary.Builder dictionary = new TermDictionary.Builder(words.size());
+        byte[] flags = new byte[words.size()];
+        for(Map.Entry<String, Byte> word : words.entrySet())
+            flags[dictionary.add(word.getKey())] = word.getValue();
+
+        LOGGER.info("Compiled lexicon with {} words.", dictionary.size());
+        return new Lexicon(dictionary.build(), flags);
+    }
+
+    /**
+     * Reads the words from a text resource, one word per line.
+     * @param resourceName Name of the resource.
+     * @param flag Flag to add to each word.
+     * @param words Words and their flags to add to.
+     */
+    private static void readWords(String resourceName, byte flag, Map<String, Byte> words){
+        LOGGER.info("Loading words from: {}", resourceName);
+        InputStream resource = Lexicon.class.getResourceAsStream(resourceName);
+        if(resource == null){
+            LOGGER.error("Failed to find word list: {}", resourceName);
+            return;
+        }
+
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(resource))){
+            String line;
+            while((line = br.readLine()) != null){
+                if(StandardCharsets.US_ASCII.newEncoder().canEncode(line))
+                    words.merge(line, flag, (Byte a, Byte b) -> (byte) (a | b));
+                else
+                    LOGGER.debug("Skipping non ASCII word: {}", line);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to load words.", e);
+        }
+    }
+
+    /**
+     * Reads a compiled Lexicon.
+     * @param data Compiled Lexicon bytes.
+     * @return Lexicon read.
+     * @throws IOException If the data isn't a compiled Lexicon.
+     */
+    private static Lexicon read(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if(in.readInt() != MAGIC)
+            throw new IOException("Not a compiled lexicon.");
+
+        TermDictionary words = TermDictionary.readFrom(in);
+        byte[] flags = new byte[words.size()];
+        in.readFully(flags);
+        return new Lexicon(words, flags);
+    }
+
+    /**
+     * Writes this Lexicon in its compiled form.
+     * @param out Stream to write to.
+     * @throws IOException If writing fails.
+     */
+    private void write(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        words.writeTo(dos);
+        dos.write(flags);
+        dos.flush();
+    }
+
+    /**
+     * Compiles the Lexicon at build time.
+     * @param args Path of the compiled resource to write.
+     * @throws IOException If writing fails.
+     */
+    public static void main(String[] args) throws IOException {
+        File out = new File(args[0]);
+        out.getParentFile().mkdirs();
+        try(OutputStream os = new BufferedOutputStream(new FileOutputStream(out))){
+            compile().write(os);
+        }
+        LOGGER.info("Wrote compiled lexicon to: {}", out.getAbsolutePath());
+    }
+}
@@ -5,17 +5,12 @@ import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.CoreDocument;
 import edu.stanford.nlp.pipeline.CoreSentence;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.process.Morphology;
 import org.slf4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.regex.Pattern;
+import java.util.function.Predicate;
 
 /**
  * Singleton class used to Scan a piece of text. This text could be anything
@@ -26,7 +21,6 @@ public class TextScanner {
 
     private static TextScanner INSTANCE;
     private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(TextScanner.class);
-    private static final String DICTIONARY_RES = "dictionary.txt";
 
     /**
      * Gets the Singleton instance.
@@ -39,53 +33,95 @@ public class TextScanner {
     }
 
     /**
-     * Various Stop word lists that are available.
+     * Analyzer profiles that can be used to scan text. Each profile
+     * dictates which CoreNLP annotators are run over the text. The profile
+     * used for indexing and querying is configurable through the
+     * {@value #INDEX_PROFILE_PROP} and {@value #QUERY_PROFILE_PROP}
+     * properties, both default to {@link #Full}.
      */
-    private enum StopwordLists{
-        /** Very Common stopwords **/
-        General         ("general-stopwords.txt"),
-        /** Common stopwords **/
-        More            ("more-stopwords.txt"),
-        /** Extra stopwords **/
-        Extra           ("extra-stopwords.txt"),
-        /** Wiki specific stopwords **/
-        Wiki_Specific   ("wiki-specific-stopwords.txt");
-
-        private String resourceFileName;
+    public enum AnalyzerProfile{
+        /** Tokenizer, sentence splitter, part of speech, and lemmatizer. Needed when sentences are used. **/
+        Full            ("tokenize,ssplit,pos,lemma", true),
+        /** Tokenizer and sentence splitter, what indexing needs for tokens and snippets. Skips the part of speech
+         * tagger, tokens being lemmatized by a morphological stemmer without a part of speech. **/
+        Index           ("tokenize,ssplit", true),
+        /** Same as Full, however the text is treated as one sentence as queries are short. **/
+        Query           ("tokenize,ssplit,pos,lemma", false, "ssplit.isOneSentence", "true"),
+        /** Tokenizer only. Tokens are lemmatized by a morphological stemmer without a part of speech. **/
+        Morphological   ("tokenize", false);
+
+        private String annotators;
+        private boolean sentences;
+        private String[] options;
 
         /**
-         * Constructs an enum with the stopword resource name.
-         * @param fileName resource name found in jar artifact.
+         * Constructs an enum with the pipeline setup.
+         * @param annotators CoreNLP annotators to run.
+         * @param sentences True if the profile provides meaningful sentences.
+         * @param options Extra pipeline properties as key value pairs.
          */
-        private StopwordLists(String fileName){
-            this.resourceFileName = fileName;
+        private AnalyzerProfile(String annotators, boolean sentences, String... options){
+            this.annotators = annotators;
+            this.sentences = sentences;
+            this.options = options;
         }
 
         /**
-         * Loads the stopwords from this enums resource pointer.
-         * @return Set of stopwords.
+         * Dictates if documents scanned with this profile can be
+         * split into sentences, such as for snippets.
+         * @return true if sentences are available, otherwise false.
          */
-        public Set<String> loadStopwords(){
-            LOGGER.info("Loading stopwords from: {}", resourceFileName);
-
-            Set<String> stopwords = new HashSet<>();
-            InputStream resource = TextScanner.class.getResourceAsStream(resourceFileName);
-
-            try(BufferedReader br = new BufferedReader(new InputStreamReader(resource))){
-                String line;
-                while((line = br.readLine()) != null)
-                    stopwords.add(line);
-            } catch (IOException e) {
-                LOGGER.error("Failed to load stopwords.", e);
+        public boolean hasSentences(){
+            return sentences;
+        }
+
+        /**
+         * Creates the CoreNLP pipeline for this profile.
+         * @return Pipeline matching this profile.
+         */
+        private StanfordCoreNLP createPipeline(){
+            LOGGER.info("Loading CoreNLP pipeline for profile: {}", this);
+            Properties props = new Properties();
+            props.setProperty("annotators", annotators);
+            props.setProperty("tokenize.language", "English");
+            props.setProperty("tokenize.options", "americanize=false");
+            for(int i = 0; i + 1 < options.length; i += 2)
+                props.setProperty(options[i], options[i + 1]);
+            return new StanfordCoreNLP(props);
+        }
+
+        /**
+         * Gets the profile set by a System Property.
+         * @param property Name of the System Property.
+         * @return Profile named by the property, or {@link #Full} if not set or invalid.
+         */
+        public static AnalyzerProfile fromProperty(String property){
+            String name = System.getProperty(property, "");
+            for(AnalyzerProfile profile : values()){
+                if(profile.name().equalsIgnoreCase(name.trim()))
+                    return profile;
             }
-            return stopwords;
+
+            if(!name.isBlank())
+                LOGGER.warn("Unknown analyzer profile '{}' for {}. Using {}.", name, property, Full);
+            return Full;
         }
     }
 
-    private StanfordCoreNLP pipeline;
-    private Set<String> stopwords;
-    private Map<Long, Set<String>> dictionary;
-    private Pattern pattern;
+    /** Property naming the {@link AnalyzerProfile} used when indexing documents. */
+    public static final String INDEX_PROFILE_PROP = "analyzer.profile.index";
+
+    /** Property naming the {@link AnalyzerProfile} used when processing queries. */
+    public static final String QUERY_PROFILE_PROP = "analyzer.profile.query";
+
+    /** Morphological stemmer used when a token has no lemma. Not thread safe hence one per thread. */
+    private static final ThreadLocal<Morphology> MORPHOLOGY = ThreadLocal.withInitial(Morphology::new);
+
+    private Map<AnalyzerProfile, StanfordCoreNLP> pipelines;
+    private AnalyzerProfile indexProfile;
+    private AnalyzerProfile queryProfile;
+    private Lexicon lexicon;
+    private Predicate<String> tokenFilter;
     private long preprocessingSize;
     private long postprocessingSize;
 
@@ -93,30 +129,55 @@ public class TextScanner {
      * Creates a text scanner.
      * When created the following items are loaded and saved:
      * <ul>
-     *     <li>CoreNLP Pipeline - Loaded wit a tokenizer, sentence splitter, part of speech, and lemmatizer.
-     *     <li>All stopwords from {@link StopwordLists}
-     *     <li>Patterns to find things such as numbers, urls, things that aren't really token.
-     *     <li>Dictionary of legal english words.
+     *     <li>CoreNLP Pipeline - Loaded for the {@link AnalyzerProfile#Full Full} profile. Others are loaded when first used.
+     *     <li>All stopwords and the dictionary of legal english words from the {@link Lexicon}.
      * </ul>
      */
     private TextScanner(){
-        Properties props = new Properties();
-        props.setProperty("annotators", "tokenize,ssplit,pos,lemma");
-        props.setProperty("tokenize.language", "English");
-        props.setProperty("tokenize.options", "americanize=false");
-        pipeline =  new StanfordCoreNLP(props);
+        pipelines = new EnumMap<>(AnalyzerProfile.class);
+        indexProfile = AnalyzerProfile.fromProperty(INDEX_PROFILE_PROP);
+        queryProfile = AnalyzerProfile.fromProperty(QUERY_PROFILE_PROP);
+        getPipeline(AnalyzerProfile.Full);
+        LOGGER.info("Analyzer profiles. Index={},Query={}", indexProfile, queryProfile);
 
-        stopwords = new HashSet<>();
-        for(StopwordLists sl : StopwordLists.values())
-            stopwords.addAll(sl.loadStopwords());
-
-        this.pattern = loadPatterns();
-        this.dictionary = loadDictionary();
+        this.lexicon = Lexicon.load();
+        this.tokenFilter = compileTokenFilter();
 
         this.preprocessingSize = 0;
         this.postprocessingSize = 0;
     }
 
+    /**
+     * Gets the profile configured for indexing documents.
+     * @return Index analyzer profile.
+     */
+    public AnalyzerProfile getIndexProfile(){
+        return indexProfile;
+    }
+
+    /**
+     * Gets the profile configured for processing queries.
+     * @return Query analyzer profile.
+     */
+    public AnalyzerProfile getQueryProfile(){
+        return queryProfile;
+    }
+
+    /**
+     * Gets the pipeline for a profile. The pipeline is created if
+     * this is the first time it's requested.
+     * @param profile Profile to get the pipeline for.
+     * @return CoreNLP pipeline.
+     */
+    private synchronized StanfordCoreNLP getPipeline(AnalyzerProfile profile){
+        StanfordCoreNLP pipeline = pipelines.get(profile);
+        if(pipeline == null){
+            pipeline = profile.createPipeline();
+            pipelines.put(profile, pipeline);
+        }
+        return pipeline;
+    }
+
     /**
      * Get the number of tokens found post-processing. Note
      * that this number doesn't represent unique tokens.
@@ -138,92 +199,69 @@ public class TextScanner {
     }
 
     /**
-     * Loads the various patterns into one pattern.
-     * The various patterns are loaded:
-     * <ul>
-     *     <li>A Number Pattern to find numbers anywhere in a token.
-     *     <li>A Punctuation pattern to find symbols anywhere in a token.
-     *     <li>A URL pattern to find urls anywhere in a token.
-     *     <li>A Non English Letter pattern to find tokens that contain letters that aren't valid english letters.
-     * </ul>
-     * @return Singular pattern to match anything from the loaded patterns.
+     * Scans a String Builder into a CoreNLP Document.
+     * @param sb StringBuilder to scan.
+     * @return Created CoreNLP Document.
+     * @see #scan(String)
      */
-    private Pattern loadPatterns(){
-        LOGGER.info("Loading illegal patterns.");
-        Collection<String> patterns = new ArrayList<>();
-        patterns.add(Pattern.compile("\\d+(|.\\d+)").pattern()); //Numbers
-        patterns.add(Pattern.compile("\\p{Punct}+").pattern()); //Symbols
-        patterns.add(Pattern.compile("\\b(https?|ftp|file)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]").pattern()); //URLS
-        patterns.add(Pattern.compile(".*[^a-zA-Z-_`'‘]+.*").pattern()); //Only English Words
-
-        String globalPattern = "";
-        for(String pattern : patterns) {
-            if(!globalPattern.isEmpty())
-                globalPattern += "|";
-            globalPattern += String.format("(%s)", pattern);
-        }
-        return Pattern.compile(globalPattern);
+    public CoreDocument scan(StringBuilder sb){
+        return scan(sb.toString());
     }
 
     /**
-     * Loads a Dictionary from a resource within the artifact.
-     * @return A map of hash-values to a set of tokens for quicker look up.
+     * Scans a String Builder into a CoreNLP Document.
+     * @param sb StringBuilder to scan.
+     * @param profile Analyzer profile to scan with.
+     * @return Created CoreNLP Document.
+     * @see #scan(String, AnalyzerProfile)
      */
-    private Map<Long, Set<String>> loadDictionary(){
-        LOGGER.info("Loading Dictionary Words.");
-        Map<Long, Set<String>> dic = new HashMap<>();
-
-        InputStream resource = TextScanner.class.getResourceAsStream(DICTIONARY_RES);
-        try(BufferedReader br = new BufferedReader(new InputStreamReader(resource))){
-            String line;
-            while((line = br.readLine()) != null){
-                long hash = Token.getHashValue(line);
-                Set<String> sameHash = dic.get(hash);
-                if(sameHash == null){
-                    sameHash = new HashSet<>();
-                    dic.put(hash, sameHash);
-                }
-                sameHash.add(line);
-            }
-        }catch (Exception e){
-            LOGGER.error("Failed to load dictionary terms.", e);
-        }
-
-        return dic;
+    public CoreDocument scan(StringBuilder sb, AnalyzerProfile profile){
+        return scan(sb.toString(), profile);
     }
 
     /**
-     * Scans a String Builder into a CoreNLP Document.
-     * @param sb StringBuilder to scan.
+     * Scans a String into a CoreNLP Document using the {@link AnalyzerProfile#Full Full} profile.
+     * @param string String to scan.
      * @return Created CoreNLP Document.
-     * @see #scan(String)
+     * @see #scan(String, AnalyzerProfile)
      */
-    public CoreDocument scan(StringBuilder sb){
-        return scan(sb.toString());
+    public CoreDocument scan(String string){
+        return scan(string, AnalyzerProfile.Full);
     }
 
     /**
-     * Scans a String into a CoreNLP Document. Note that the String is converted into the
-     * ASCII standard Charset and all characters (65533) are converted to tilda's.
+     * Scans a String into a CoreNLP Document. Note that the String is first
+     * {@link #normalize(String) normalized}, so the offsets of the tokens found
+     * are offsets into the normalized text, {@link CoreDocument#text()}.
      * @param string String to scan.
+     * @param profile Analyzer profile to scan with.
      * @return Created CoreNLP Document.
      */
-    public CoreDocument scan(String string){
-        LOGGER.info("Converting document to a CoreDocument.");
-        String doc = new String(string.getBytes(), StandardCharsets.US_ASCII).replace((char) 65533, '~');
-        return pipeline.processToCoreDocument(doc);
+    public CoreDocument scan(String string, AnalyzerProfile profile){
+        LOGGER.info("Converting document to a CoreDocument. Profile={}", profile);
+        return getPipeline(profile).processToCoreDocument(normalize(string));
+    }
+
+    /**
+     * Normalizes a String the way it is before being scanned. The String is converted
+     * into the ASCII standard Charset and all characters (65533) are converted to tilda's.
+     * A character that isn't ASCII can become more than one tilda, so lengths measured
+     * against the offsets of scanned tokens must be taken on the normalized String.
+     * @param string String to normalize.
+     * @return Normalized String.
+     */
+    public static String normalize(String string){
+        return new String(string.getBytes(), StandardCharsets.US_ASCII).replace((char) 65533, '~');
     }
 
     /**
      * Scans a Document and retrieves all viable tokens found.
      * @param document Document to scan.
-     * @param cleaningMethods Methods to apply to each token to test for viability.
      * @return Map of token String to actual Token object.
+     * @see #compileTokenFilter()
      */
-    public Map<String, Token> getDocTokens(CoreDocument document, Consumer<Map<String, Token>> ... cleaningMethods){
+    public Map<String, Token> getDocTokens(CoreDocument document){
         Map<String, Token> tokens = getTokens(document.tokens());
-        for(int i = 0; i < cleaningMethods.length; i++)
-            cleaningMethods[i].accept(tokens);
         postprocessingSize += tokens.size();
         return tokens;
     }
@@ -231,113 +269,166 @@ public class TextScanner {
     /**
      * Scans a Sentence and retrieves all viable tokens found.
      * @param sentence Sentence to scan.
-     * @param cleaningMethods Methods to apply to each token to test for viability.
      * @return Map of token String to actual Token object.
+     * @see #compileTokenFilter()
      */
-    public Map<String, Token> getSentenceTokens(CoreSentence sentence, Consumer<Map<String, Token>> ... cleaningMethods){
+    public Map<String, Token> getSentenceTokens(CoreSentence sentence){
         Map<String, Token> tokens = getTokens(sentence.tokens());
-        for(int i = 0; i < cleaningMethods.length; i++)
-            cleaningMethods[i].accept(tokens);
         postprocessingSize += tokens.size();
         return tokens;
     }
 
+    /**
+     * Reduces a single word to the form of a token without a pipeline, using the
+     * morphological stemmer the same as tokens without a lemma. The word isn't
+     * checked against the token filter.
+     * @param word Word to reduce.
+     * @return Token form of the word.
+     */
+    public String stem(String word){
+        return MORPHOLOGY.get().stem(word).toLowerCase().replace(".", "");
+    }
+
     /**
      * Scans a list of CoreNLP Tokens and turns them into a map of Unique Tokens.
      * If duplicates are found the {@link Token#getFrequency() frequnecy} of the
-     * token is incremented. Also all tokens are lemmatized if possible.
+     * token is incremented. Also all tokens are lemmatized if possible, tokens
+     * without a lemma from the pipeline are lemmatized by a morphological stemmer.
+     * Each lemmatized token is checked by the {@link #tokenFilter} before it's
+     * added, so rejected tokens never get a Token created for them. The position
+     * of each token is its index in the labels, so rejected tokens leave gaps.
      * @param labels CoreNLP Tokens to scan.
      * @return Map of token strings to Token objects.
      */
     private Map<String, Token> getTokens(List<CoreLabel> labels){
         LOGGER.debug("Getting Tokens from Document/Sentence.");
         Map<String, Token> tokens = new HashMap<>();
+        int position = -1;
         for(CoreLabel token : labels) {
             preprocessingSize++;
-            String word = token.lemma().toLowerCase();
+            position++;
+            String word = token.lemma();
             if(word == null)
-                word = token.value().toLowerCase();
+                word = MORPHOLOGY.get().stem(token.value());
 
-            word = word.replace(".", "");
+            word = word.toLowerCase().replace(".", "");
             LOGGER.trace("Found Token: {}", word);
 
             Token t = tokens.get(word);
-            if(t == null) {
-                t = new Token(word);
+            if(t != null) {
+                LOGGER.trace("Increasing Token frequency for: {}", word);
+                t.incrementFrequency(position);
+            }else if(tokenFilter.test(word)) {
+                t = new Token(word, position);
                 tokens.put(word, t);
                 LOGGER.trace("Creating new Token for: {}", word);
             }else {
-                LOGGER.trace("Increasing Token frequency for: {}", word);
-                t.incrementFrequency();
+                LOGGER.trace("Removing useless token: {}", word);
             }
         }
         return tokens;
     }
 
     /**
-     * Function to remove stop words from a map of tokens.
-     * @param tokens Tokens to clean of stop words.
+     * Compiles all the token checks into one chain. Checks are ordered cheapest
+     * first and the chain stops at the first check a token fails.
+     * <ol>
+     *     <li>Token length is between 3-45 characters.
+     *     <li>Token isn't a stop word and is found in the dictionary.
+     *     <li>Token doesn't match an illegal pattern.
+     * </ol>
+     * @return Predicate that is true if the token should be kept, otherwise false.
+     */
+    private Predicate<String> compileTokenFilter(){
+        Predicate<String> length = (String token) -> {
+            int l = token.length();
+            return 3 <= l && l <= 45;
+        };
+        return length.and(this::isDictionaryTerm).and(TextScanner::isLegalPattern);
+    }
+
+    /**
+     * Checks if a token is found in the dictionary and isn't a stop word.
+     * Both are answered by one lookup in the {@link Lexicon}.
+     * @param token Token to check.
+     * @return true if the token is a dictionary word that isn't a stop word, otherwise false.
      */
-    public void removeStopwords(Map<String, Token> tokens){
-        LOGGER.debug("Cleaning Tokens of stopwords.");
-        removeTokens(tokens,  (Token token) -> {
-            return stopwords.contains(token.getToken());
-        });
+    public boolean isDictionaryTerm(String token){
+        return lexicon.getFlags(token) == Lexicon.DICTIONARY;
     }
 
     /**
-     * Function to remove words that aren't found in a dictionary.
-     * @param tokens Tokens to clean of non dictionary words.
+     * Checks if a token doesn't match any of the illegal patterns: numbers, symbols,
+     * urls, and words with non english letters. This is a single pass over the
+     * tokens' characters rather than a regex, the patterns being summed up as:
+     * <ul>
+     *     <li>Any character other than an english letter, '-', '_', '`', an apostrophe, or a left single
+     *     quote is illegal. This covers the number and url patterns as well.
+     *     <li>A token made up only of the symbols '-', '_', '`', and apostrophes is illegal.
+     * </ul>
+     * A token holding line terminators is only legal if a letter or one of the symbols is
+     * between its first and last line terminator, as the patterns' '.' doesn't match them.
+     * @param token Token to check.
+     * @return true if the token is legal, otherwise false.
      */
-    public void removeNonDictionaryTerms(Map<String, Token> tokens){
-        LOGGER.debug("Cleaning Tokens of Non-Dictionary Terms.");
-        removeTokens(tokens,  (Token token) -> {
-            Set<String> hashTokens = dictionary.get(token.getHash());
-            if(hashTokens == null)
+    public static boolean isLegalPattern(String token){
+        int len = token.length();
+        boolean onlySymbols = true;
+        boolean illegalChar = false;
+        int firstLineEnd = -1;
+        int lastLineEnd = -1;
+        for(int i = 0; i < len; i++){
+            char c = token.charAt(i);
+            if(isTokenLetter(c)) {
+                onlySymbols = false;
+            }else if(isLineTerminator(c)) {
+                if(firstLineEnd < 0)
+                    firstLineEnd = i;
+                lastLineEnd = i;
+            }else if(!isTokenSymbol(c)) {
+                illegalChar = true;
+            }
+        }
+
+        if(firstLineEnd < 0)
+            return len == 0 || !(illegalChar || onlySymbols);
+
+        // The regex '.' doesn't match line terminators, so they're only matched
+        // if every character between the first and last one is illegal too.
+        for(int i = firstLineEnd + 1; i < lastLineEnd; i++){
+            char c = token.charAt(i);
+            if(isTokenLetter(c) || isTokenSymbol(c))
                 return true;
-            return !hashTokens.contains(token.getToken());
-        });
+        }
+        return false;
     }
 
     /**
-     * Function to remove tokens that match illegal patterns.
-     * @param tokens Tokens to clean of illegal patterns.
+     * Dictates if a character is a letter allowed in a token.
+     * @param c Character to check.
+     * @return true if an english letter or left single quote, otherwise false.
      */
-    public void removeIllegalPatterns(Map<String, Token> tokens){
-        LOGGER.debug("Cleaning Tokens of illegal patterns.");
-        removeTokens(tokens,  (Token token) -> {
-            return pattern.matcher(token.getToken()).matches();
-        });
+    private static boolean isTokenLetter(char c){
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || c == '\u2018';
     }
 
     /**
-     * Function to remove tokens that are too long or short.
-     * If tokens are found to be between 3-45 characters in length
-     * thet are kept otherwise they are removed.
-     * @param tokens Tokens to clean due to their length.
+     * Dictates if a character is a symbol allowed in a token.
+     * Tokens can't be made up of only these symbols.
+     * @param c Character to check.
+     * @return true if one of '-', '_', '`', or an apostrophe, otherwise false.
      */
-    public void removeLongShortTokens(Map<String, Token> tokens){
-        LOGGER.debug("Removing Tokens longer than 45 characters and shorter than 3.");
-        removeTokens(tokens,  (Token token) -> {
-            int length = token.getToken().length();
-            return  length < 3 || 45 < length;
-        });
+    private static boolean isTokenSymbol(char c){
+        return c == '-' || c == '_' || c == '`' || c == '\'';
     }
 
     /**
-     * Method for looping over tokens and applying the checker.
-     * @param tokens Tokens to scan through.
-     * @param tokenChecker Token check to use on each token. If true is returned from this
-     *                     method the token is removed, otherwise it is kept.
+     * Dictates if a character is a line terminator as
+     * defined by {@link java.util.regex.Pattern}.
+     * @param c Character to check.
+     * @return true if a line terminator, otherwise false.
      */
-    private void removeTokens(Map<String, Token> tokens, Function<Token, Boolean> tokenChecker){
-        Iterator<Map.Entry<String, Token>> it = tokens.entrySet().iterator();
-        while(it.hasNext()){
-            Map.Entry<String, Token> entry = it.next();
-            if (tokenChecker.apply(entry.getValue())) {
-                LOGGER.debug("Removing useless token: {}", entry.getKey());
-                it.remove();
-            }
-        }
+    private static boolean isLineTerminator(char c){
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
     }
 }
@@ -1,5 +1,6 @@
 package cs437.bsu.search.engine.corpus;
 
+import cs437.bsu.search.engine.container.IntList;
 import cs437.bsu.search.engine.index.IndexCreator;
 import cs437.bsu.search.engine.util.LoggerInitializer;
 import org.slf4j.Logger;
@@ -16,26 +17,34 @@ public class Token {
     private String token;
     private int frequency;
     private long hash;
+    private IntList positions;
 
     /**
      * Creates a Token. Note that the hash-value is
      * pre-computed here and doesn't need to be done manually.
      * @param token String form of the token.
+     * @param position Position the token was first found at.
      */
-    protected Token(String token) {
+    protected Token(String token, int position) {
         this.token = token;
         this.frequency = 1;
+        this.positions = new IntList(4);
+        positions.add(position);
         hash = getHashValue(token);
     }
 
-    /** Increments the frequency of the token found in the current setting. */
-    protected void incrementFrequency(){
+    /**
+     * Increments the frequency of the token found in the current setting.
+     * @param position Position the token was found at.
+     */
+    protected void incrementFrequency(int position){
         frequency++;
+        positions.add(position);
     }
 
     /**
      * Saves the tokens' data to the {@link IndexCreator}
-     * @param docId Document ID the token is associated to.
+     * @param docId Document ordinal the token is associated to.
      * @param lastToken True if this is the last token found
      *                 in the last document, otherwise false.
      */
@@ -82,6 +91,31 @@ public class Token {
         return frequency;
     }
 
+    /**
+     * Gets the positions the token was found at, in
+     * ascending order. A position is the index of the
+     * word in the scanned text, counting filtered words.
+     * @return Positions of the token.
+     */
+    public int[] getPositions() {
+        return positions.toArray();
+    }
+
+    /**
+     * Dictates if the token was found within a range of positions.
+     * @param start First position of the range.
+     * @param end End of the range, exclusive.
+     * @return true if found within the range, otherwise false.
+     */
+    public boolean isFoundWithin(int start, int end) {
+        for(int i = 0; i < positions.size(); i++){
+            int position = positions.get(i);
+            if(position >= start && position < end)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Gets the hash-value of the token.
      * @return hash-value.
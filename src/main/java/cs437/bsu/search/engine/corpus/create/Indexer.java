@@ -29,6 +29,7 @@ public class Indexer extends Thread {
         this.documents = new ConcurrentLinkedQueue<>();
         this.saver = new Saver();
         keepRunning = true;
+        IndexingStats.getInstance().addQueue("Indexer", documents::size);
     }
 
     /**
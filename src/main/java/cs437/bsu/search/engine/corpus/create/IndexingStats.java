@@ -0,0 +1,198 @@
+package cs437.bsu.search.engine.corpus.create;
+
+import cs437.bsu.search.engine.entry.Run;
+import cs437.bsu.search.engine.util.LatencyHistogram;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import cs437.bsu.search.engine.util.Management;
+import cs437.bsu.search.engine.util.TaskExecutor;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Throughput and progress of creating an Index. Documents and tokens are counted
+ * as they're scanned and saved, along with the time spent in the NLP pipeline vs
+ * writing the DML files, the depth of the {@link Indexer} and {@link Saver}
+ * queues and the bytes written per DML type. Reported through JMX and a periodic
+ * log line. This class is a Singleton.
+ * @author Cade Peterson
+ */
+public class IndexingStats implements IndexingStatsMXBean {
+
+    private static IndexingStats INSTANCE;
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(IndexingStats.class);
+
+    /** Property for the seconds between progress log lines. 0 disables them. */
+    public static final String INTERVAL_PROP = "index.stats.interval";
+
+    /**
+     * Gets this classes instance. The instance is registered
+     * with JMX when first created.
+     * @return Class Instance.
+     */
+    public static synchronized IndexingStats getInstance(){
+        if(INSTANCE == null) {
+            INSTANCE = new IndexingStats();
+            Management.register(INSTANCE, "IndexingStats");
+        }
+        return INSTANCE;
+    }
+
+    private long totalDocuments;
+    private long startNanos;
+    private AtomicLong documentsParsed;
+    private AtomicLong tokensSaved;
+    private LatencyHistogram nlpTimes;
+    private LatencyHistogram writeTimes;
+    private Map<String, Supplier<Integer>> queues;
+    private Map<String, AtomicLong> bytesWritten;
+
+    /** Sets up empty stats. */
+    private IndexingStats(){
+        startNanos = System.nanoTime();
+        documentsParsed = new AtomicLong();
+        tokensSaved = new AtomicLong();
+        nlpTimes = new LatencyHistogram();
+        writeTimes = new LatencyHistogram();
+        queues = new ConcurrentHashMap<>();
+        bytesWritten = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts timing the indexing and the periodic progress log line.
+     * @param totalDocuments Number of documents to index.
+     */
+    public void start(long totalDocuments){
+        this.totalDocuments = totalDocuments;
+        this.startNanos = System.nanoTime();
+
+        long interval = Long.parseLong(System.getProperty(INTERVAL_PROP, "10"));
+        if(interval > 0) {
+            TaskExecutor.StartTask(() -> {
+                while (!Run.appDone) {
+                    TaskExecutor.sleep(interval * 1000);
+                    LOGGER.info(getReport());
+                }
+            }, () -> {});
+        }
+    }
+
+    /**
+     * Adds a queue whose depth is reported.
+     * @param stage Name of the stage holding the queue.
+     * @param depth Supplies the number of documents in the queue.
+     */
+    public void addQueue(String stage, Supplier<Integer> depth){
+        queues.put(stage, depth);
+    }
+
+    /**
+     * Records a document scanned by the NLP pipeline.
+     * @param nanos Time spent scanning.
+     */
+    public void documentParsed(long nanos){
+        documentsParsed.incrementAndGet();
+        nlpTimes.record(nanos);
+    }
+
+    /**
+     * Records a document written to the DML files.
+     * @param tokens Number of tokens written for the document.
+     * @param nanos Time spent writing.
+     */
+    public void documentSaved(int tokens, long nanos){
+        tokensSaved.addAndGet(tokens);
+        writeTimes.record(nanos);
+    }
+
+    /**
+     * Records characters written to a DML type.
+     * @param type DML type written to.
+     * @param bytes Characters written.
+     */
+    public void bytesWritten(String type, long bytes){
+        bytesWritten.computeIfAbsent(type, (String t) -> new AtomicLong()).addAndGet(bytes);
+    }
+
+    @Override
+    public long getTotalDocuments(){
+        return totalDocuments;
+    }
+
+    @Override
+    public long getDocumentsParsed(){
+        return documentsParsed.get();
+    }
+
+    @Override
+    public long getDocumentsSaved(){
+        return writeTimes.getCount();
+    }
+
+    @Override
+    public long getTokensSaved(){
+        return tokensSaved.get();
+    }
+
+    @Override
+    public double getDocumentsPerSecond(){
+        return getDocumentsSaved() / getElapsedSeconds();
+    }
+
+    @Override
+    public double getTokensPerSecond(){
+        return getTokensSaved() / getElapsedSeconds();
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths(){
+        Map<String, Integer> depths = new TreeMap<>();
+        for(Map.Entry<String, Supplier<Integer>> queue : queues.entrySet())
+            depths.put(queue.getKey(), queue.getValue().get());
+        return depths;
+    }
+
+    @Override
+    public double getNlpMillis(){
+        return nlpTimes.getTotal() / 1_000_000d;
+    }
+
+    @Override
+    public double getWriteMillis(){
+        return writeTimes.getTotal() / 1_000_000d;
+    }
+
+    @Override
+    public Map<String, Long> getBytesWritten(){
+        Map<String, Long> bytes = new TreeMap<>();
+        for(Map.Entry<String, AtomicLong> entry : bytesWritten.entrySet())
+            bytes.put(entry.getKey(), entry.getValue().get());
+        return bytes;
+    }
+
+    @Override
+    public long getEtaSeconds(){
+        double rate = getDocumentsPerSecond();
+        if(rate <= 0 || totalDocuments <= 0)
+            return -1;
+        return (long) Math.ceil(Math.max(totalDocuments - getDocumentsSaved(), 0) / rate);
+    }
+
+    @Override
+    public String getReport(){
+        long eta = getEtaSeconds();
+        return String.format("Indexed %d/%d documents (parsed %d). %.1f docs/s, %.0f tokens/s. Queues: %s. " +
+                        "NLP %.1f ms/doc, write %.1f ms/doc. Bytes written: %s. ETA: %s",
+                getDocumentsSaved(), totalDocuments, getDocumentsParsed(), getDocumentsPerSecond(), getTokensPerSecond(),
+                getQueueDepths(), nlpTimes.getMean() / 1_000_000, writeTimes.getMean() / 1_000_000, getBytesWritten(),
+                eta < 0 ? "unknown" : Run.getTimeLength(eta * 1000));
+    }
+
+    private double getElapsedSeconds(){
+        return Math.max(System.nanoTime() - startNanos, 1) / 1_000_000_000d;
+    }
+}
@@ -0,0 +1,84 @@
+package cs437.bsu.search.engine.corpus.create;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link IndexingStats}.
+ * @author Cade Peterson
+ */
+public interface IndexingStatsMXBean {
+
+    /**
+     * Gets the number of documents to index.
+     * @return Document count.
+     */
+    long getTotalDocuments();
+
+    /**
+     * Gets the number of documents scanned by the NLP pipeline.
+     * @return Document count.
+     */
+    long getDocumentsParsed();
+
+    /**
+     * Gets the number of documents written to the DML files.
+     * @return Document count.
+     */
+    long getDocumentsSaved();
+
+    /**
+     * Gets the number of tokens written to the DML files,
+     * one per token in each document.
+     * @return Token count.
+     */
+    long getTokensSaved();
+
+    /**
+     * Gets the documents saved per second since indexing started.
+     * @return Documents per second.
+     */
+    double getDocumentsPerSecond();
+
+    /**
+     * Gets the tokens saved per second since indexing started.
+     * @return Tokens per second.
+     */
+    double getTokensPerSecond();
+
+    /**
+     * Gets the number of documents waiting in each stage.
+     * @return Stage to queue depth.
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Gets the total time spent scanning documents with the NLP pipeline,
+     * summed over all scanning threads.
+     * @return Milliseconds.
+     */
+    double getNlpMillis();
+
+    /**
+     * Gets the total time spent writing documents to the DML files.
+     * @return Milliseconds.
+     */
+    double getWriteMillis();
+
+    /**
+     * Gets the characters written to each DML type, equal to bytes for ASCII text.
+     * @return DML type to bytes written.
+     */
+    Map<String, Long> getBytesWritten();
+
+    /**
+     * Gets the estimated time left at the current rate.
+     * @return Seconds left or -1 if unknown.
+     */
+    long getEtaSeconds();
+
+    /**
+     * Gets the progress line that is logged periodically.
+     * @return Progress report.
+     */
+    String getReport();
+}
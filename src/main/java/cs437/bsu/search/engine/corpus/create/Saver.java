@@ -30,6 +30,7 @@ public class Saver extends Thread {
     public Saver(){
         this.documents = new ConcurrentLinkedQueue<>();
         this.keepRunning = true;
+        IndexingStats.getInstance().addQueue("Saver", documents::size);
     }
 
     /**
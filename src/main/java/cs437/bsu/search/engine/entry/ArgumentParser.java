@@ -21,13 +21,18 @@ public class ArgumentParser {
         /** Program is creating an index */
         CreateIndex,
         /** Program is running a search engine */
-        SearchEngine
+        SearchEngine,
+        /** Program is benchmarking the analyzer profiles over a corpus */
+        AnalyzerBenchmark,
+        /** Program is running a file of queries against the index */
+        BatchSearch
     }
 
     private boolean validArgs;
     private String errorRsn;
     private File dir;
     private File aolDir;
+    private File queries;
 
     /**
      * Parses and saves the arguments loaded on the command line. Note
@@ -84,6 +89,14 @@ public class ArgumentParser {
      */
     public File getAolDir() { return aolDir; }
 
+    /**
+     * Gets the queries to run.
+     * @return A file of queries or a directory of AOL query logs. Note that if
+     * the application running isn't {@link ApplicationType#BatchSearch} then
+     * null will be returned.
+     */
+    public File getQueries() { return queries; }
+
     /**
      * Parses the application command.
      * @param loc Location in the args.
@@ -113,6 +126,7 @@ public class ArgumentParser {
 
         switch (application){
             case CreateIndex:
+            case AnalyzerBenchmark:
                 loc++;
                 if(checkPosition(loc, args)){
                     errorRsn = "No directory to corpus was provided.";
@@ -153,6 +167,22 @@ public class ArgumentParser {
                     errorRsn = String.format("Invalid aol query log directory provided: %s", args[loc]);
                 }
 
+                if(application != ApplicationType.BatchSearch || !validArgs)
+                    break;
+
+                //QUERIES
+                loc++;
+                if(checkPosition(loc, args)){
+                    errorRsn = "No queries to run were provided.";
+                    return -1;
+                }
+
+                queries = new File(args[loc]);
+                if(!queries.exists()){
+                    validArgs = false;
+                    errorRsn = String.format("Invalid queries provided: %s", args[loc]);
+                }
+
                 break;
         }
 
@@ -1,15 +1,20 @@
 package cs437.bsu.search.engine.entry;
 
+import cs437.bsu.search.engine.corpus.AnalyzerBenchmark;
 import cs437.bsu.search.engine.corpus.TextScanner;
 import cs437.bsu.search.engine.corpus.create.Indexer;
-import cs437.bsu.search.engine.index.IndexLoader;
+import cs437.bsu.search.engine.corpus.create.IndexingStats;
+import cs437.bsu.search.engine.index.IndexSnapshot;
+import cs437.bsu.search.engine.query.BatchSearch;
 import cs437.bsu.search.engine.query.SearchEngine;
 import cs437.bsu.search.engine.suggestions.AOLMap;
 import cs437.bsu.search.engine.util.LoggerInitializer;
+import cs437.bsu.search.engine.util.MemoryTelemetry;
 import cs437.bsu.search.engine.util.TaskExecutor;
 import org.slf4j.Logger;
 
 import java.io.*;
+import java.util.concurrent.*;
 
 /**
  * Main Entry point for choosing program to execute.
@@ -34,6 +39,12 @@ public class Run {
             case CreateIndex:
                 createIndex(ap.getDirectory());
                 break;
+            case AnalyzerBenchmark:
+                analyzerBenchmark(ap.getDirectory());
+                break;
+            case BatchSearch:
+                batchSearch(ap.getDirectory(), ap.getAolDir(), ap.getQueries());
+                break;
             default:
                 searchEngine(ap.getDirectory(),ap.getAolDir());
                 break;
@@ -50,6 +61,11 @@ public class Run {
 
         long start = System.currentTimeMillis();
         File[] files = indexDirectory.listFiles();
+        if(files == null){
+            LOGGER.error("Failed to list corpus documents: {}", indexDirectory.getAbsolutePath());
+            System.exit(-1);
+        }
+        IndexingStats.getInstance().start(files.length);
         indexer = new Indexer();
         indexer.start();
 
@@ -64,6 +80,7 @@ public class Run {
             TextScanner s = TextScanner.getInstance();
             System.out.printf("Total Tokens found Pre-Processing: %d%n", s.getPreProcessingSize());
             System.out.printf("Total Tokens found Post-Processing: %d%n", s.getPostProcessingSize());
+            System.out.println(IndexingStats.getInstance().getReport());
 
             long duration = System.currentTimeMillis() - start;
             System.out.printf("Index Creation Duration: %s%n", getTimeLength(duration));
@@ -71,33 +88,102 @@ public class Run {
     }
 
     /**
-     * Runs the Search Engine program.
+     * Runs the Analyzer Benchmark program.
+     * @param corpusDir Directory of the corpus to sample.
+     */
+    private static void analyzerBenchmark(File corpusDir){
+        try{
+            new AnalyzerBenchmark(corpusDir).run();
+        }catch (IOException e){
+            LOGGER.atError().setCause(e).log("Failed to run the analyzer benchmark.");
+            System.exit(-1);
+        }
+        appDone = true;
+    }
+
+    /**
+     * Runs the Search Engine program. The index, AOL query logs, and text scanner are
+     * all loaded at the same time, the index and logs from a snapshot if it's current.
+     * The search engine starts once the index is loaded, with suggestions disabled
+     * until the AOL query logs are loaded.
      * @param dir Directory to load reverse index.
-//     * @param aolDir Directory to load aol query logs.
+     * @param aolDir Directory to load aol query logs.
      */
-    private static void searchEngine(File dir, File aolDir) throws IOException {
+    private static void searchEngine(File dir, File aolDir) {
         LOGGER.info("Starting Search Engine ...");
 
         AOLMap aol = new AOLMap(aolDir);
-        aol.run();
-        IndexLoader il = IndexLoader.getInstance();
-        il.loadIndex(dir);
-//        il.loadQueryLogs(aolDir);
+        loadIndex(new IndexSnapshot(dir, aol));
+        LOGGER.info("Index loaded. Starting Search Engine.");
+        new SearchEngine(aol).start();
+    }
+
+    /**
+     * Runs the Batch Search program. The index is loaded the same way as for the
+     * Search Engine, sharing its snapshot, then every query is run. The application
+     * exits once the AOL query logs are loaded and the snapshot is written, if it's
+     * being written, so neither is cut off part way.
+     * @param dir Directory to load reverse index.
+     * @param aolDir Directory to load aol query logs.
+     * @param queries File of queries or directory of AOL query logs to run.
+     */
+    private static void batchSearch(File dir, File aolDir, File queries) {
+        LOGGER.info("Starting Batch Search ...");
+
+        IndexSnapshot snapshot = new IndexSnapshot(dir, new AOLMap(aolDir));
+        loadIndex(snapshot);
+        LOGGER.info("Index loaded. Starting Batch Search.");
+        new BatchSearch(queries).run();
+
+        if(!snapshot.getFinished().isDone())
+            LOGGER.info("Waiting on the AOL query logs and snapshot before exiting.");
+        snapshot.getFinished().join();
+        appDone = true;
+        System.exit(0);
+    }
+
+    /**
+     * Loads the index, AOL query logs, and text scanner at the same time, the index
+     * and logs from a snapshot if it's current. Returns once the index is loaded,
+     * the AOL query logs might still be loading.
+     * @param snapshot Snapshot of the index and AOL query logs to load.
+     */
+    private static void loadIndex(IndexSnapshot snapshot) {
+        TaskExecutor.StartAsyncTask(TextScanner::getInstance);
+        CompletableFuture<Void> index = snapshot.load();
 
-        //TODO: update the loading index sequence to ensure both the index and query logs are completed
         System.out.print("Loading Index ");
-        while(!il.isFinishedLoading()){
-            for(int i = 0; i < 3; i++){
+        while(!index.isDone()){
+            for(int i = 0; i < 3 && !index.isDone(); i++){
                 System.out.print(".");
-                TaskExecutor.sleep(750);
+                waitFor(index, 750);
             }
             System.out.print("\b\b\b");
-            TaskExecutor.sleep(750);
+            waitFor(index, 750);
         }
         System.out.println();
 
-        LOGGER.info("Index loaded. Starting Search Engine.");
-        new SearchEngine(aol).start();
+        try{
+            index.join();
+        }catch (CompletionException e){
+            LOGGER.atError().setCause(e.getCause()).log("Failed to load the index.");
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Waits for a future to complete or for the time provided to pass.
+     * @param future Future to wait on.
+     * @param milliseconds Max amount of time to wait.
+     */
+    private static void waitFor(CompletableFuture<?> future, long milliseconds){
+        try{
+            future.get(milliseconds, TimeUnit.MILLISECONDS);
+        }catch (TimeoutException | ExecutionException e){
+            // Failures are handled once done
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -113,27 +199,11 @@ public class Run {
         return String.format("%02d:%02d:%02d.%d", hour, minute, second, millis);
     }
 
-    /** Starts a tasks to log the current JVM Memory Percentage used. */
+    /**
+     * Starts a tasks to log the JVM memory telemetry every ten seconds.
+     * See {@link MemoryTelemetry#startLogging(long, java.util.function.Supplier)}.
+     */
     private static void startMemoryInfoTask(){
-        if(LOGGER.isDebugEnabled()) {
-            TaskExecutor.StartTask(() -> {
-                while (!appDone) {
-                    double usedPercent = getMemoryConsumedPercentage();
-                    LOGGER.debug("JVM Memory Percentage Used: {}%", String.format("%5.2f", usedPercent));
-                    TaskExecutor.sleep(10000);
-                }
-            }, () -> {});
-        }else{
-            LOGGER.info("Debug is not enabled for this logger therefore no JVM Memory Task will be started.");
-        }
-    }
-
-    /** Gets a percentage of the total used memory in the JVM. */
-    public static double getMemoryConsumedPercentage(){
-        Runtime r = Runtime.getRuntime();
-        double usedMemory = r.totalMemory() - r.freeMemory();
-        double maxUsedMemory = usedMemory / r.maxMemory();
-        r.gc();
-        return maxUsedMemory * 100;
+        MemoryTelemetry.getInstance().startLogging(10000, () -> appDone);
     }
 }
@@ -25,19 +25,22 @@ public class Doc {
     private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(Doc.class);
 
     private int id;
+    private int externalId;
     private String title;
     private String path;
     private int highestTokenFreq;
 
     /**
      * Creates a Document with specific info.
-     * @param id ID of the document.
+     * @param id Ordinal of the document.
+     * @param externalId ID of the document parsed from its file name.
      * @param title Title of the document.
      * @param path Path to the document.
      * @param highestTokenFreq Highest found token frequency in the document.
      */
-    protected Doc(int id, String title, String path, int highestTokenFreq){
+    protected Doc(int id, int externalId, String title, String path, int highestTokenFreq){
         this.id = id;
+        this.externalId = externalId;
         this.title = title;
         this.path = path;
         this.highestTokenFreq = highestTokenFreq;
@@ -60,13 +63,22 @@ public class Doc {
     }
 
     /**
-     * Gets the ID of this document.
+     * Gets the ID of this document. This is the dense
+     * ordinal assigned when the Index was created.
      * @return Document ID.
      */
     public int getId() {
         return id;
     }
 
+    /**
+     * Gets the ID of this document parsed from its file name.
+     * @return External Document ID.
+     */
+    public int getExternalId() {
+        return externalId;
+    }
+
     /**
      * Gets the highest frequency count for a token
      * within this document.
@@ -81,7 +93,8 @@ public class Doc {
      * This snippet is found by finding the top 2 sentences with the highest cosine
      * similarity to the query. These sentences are also ordered by position found
      * in the document. The snippet also contains the title of the document and its
-     * location.
+     * location. The sentences are read from the summary kept when the Index was
+     * created, falling back to the document file if the Index has no summaries.
      * <p>
      * <b><u>Snippet Format:</u></b>
      * <br>
@@ -96,7 +109,8 @@ public class Doc {
      */
     public void getDocSnippets(List<String> docs, int position, List<Term> tokens){
         TextScanner ts = TextScanner.getInstance();
-        CoreDocument document = ts.scan(loadDocFile());
+        String summary = IndexLoader.getInstance().getSummary(id);
+        CoreDocument document = summary != null ? ts.scan(summary) : ts.scan(loadDocFile());
         TreeSet<Triple<CoreSentence, Integer, Double>> rankedSentences = new TreeSet<>(new Comparator<Triple<CoreSentence, Integer, Double>>() {
 
             @Override
@@ -114,7 +128,7 @@ public class Doc {
 
         LOGGER.debug("Ranking {} sentences.", document.sentences().size());
         for(CoreSentence cs : document.sentences()){
-            Map<String, Token> sentenceTokens = ts.getSentenceTokens(cs, ts::removeStopwords, ts::removeNonDictionaryTerms, ts::removeIllegalPatterns, ts::removeLongShortTokens);
+            Map<String, Token> sentenceTokens = ts.getSentenceTokens(cs);
             int maxFreqToken = 0;
             for(Map.Entry<String, Token> entry : sentenceTokens.entrySet()){
                 if(entry.getValue().getFrequency() > maxFreqToken)
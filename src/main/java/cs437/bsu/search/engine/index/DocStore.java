@@ -0,0 +1,345 @@
+package cs437.bsu.search.engine.index;
+
+import cs437.bsu.search.engine.container.IntList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Off-heap columnar store of the Document metadata. Each column is kept in a
+ * direct buffer indexed by the Document ordinal, so no object is kept per
+ * document. Titles and paths are UTF-8 bytes in one blob addressed by offset
+ * and only decoded when a {@link Doc} is materialized.
+ * <p>
+ * Ordinals are the dense Document IDs assigned by the {@link IndexCreator}. The
+ * IDs parsed from the Document file names are kept as their external IDs.
+ * @author Cade Peterson
+ */
+public class DocStore {
+
+    /** External ID of an ordinal with no Document. */
+    private static final int NO_DOC = -1;
+
+    private IntBuffer externalIds;
+    private IntBuffer highestTokenFreqs;
+    private IntBuffer lengths;
+    private IntBuffer offsets;
+    private ByteBuffer strings;
+    private int capacity;
+    private int size;
+    private long totalLength;
+
+    /**
+     * Creates a store from its columns.
+     * @param externalIds External ID of each ordinal, {@link #NO_DOC} for none.
+     * @param highestTokenFreqs Highest token frequency of each ordinal.
+     * @param lengths Number of tokens in each ordinal.
+     * @param offsets Start of the title and path of each ordinal in the blob, with one extra end offset.
+     * @param strings Blob of the titles and paths.
+     */
+    private DocStore(IntBuffer externalIds, IntBuffer highestTokenFreqs, IntBuffer lengths, IntBuffer offsets, ByteBuffer strings){
+        this.externalIds = externalIds;
+        this.highestTokenFreqs = highestTokenFreqs;
+        this.lengths = lengths;
+        this.offsets = offsets;
+        this.strings = strings;
+        this.capacity = externalIds.capacity();
+        for(int i = 0; i < capacity; i++){
+            if(externalIds.get(i) != NO_DOC) {
+                size++;
+                totalLength += lengths.get(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of Documents stored.
+     * @return Document count.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the number of ordinals, one more than the highest ordinal stored.
+     * Arrays indexed by ordinal should be of this length.
+     * @return Ordinal count.
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Gets the off-heap memory held by the store's columns.
+     * @return Bytes allocated.
+     */
+    public long getOffHeapBytes(){
+        return 4L * (externalIds.capacity() + highestTokenFreqs.capacity() + lengths.capacity() + offsets.capacity()) + strings.capacity();
+    }
+
+    /**
+     * Dictates if a Document is stored.
+     * @param ordinal Ordinal of the Document.
+     * @return true if stored, otherwise false.
+     */
+    public boolean contains(int ordinal){
+        return ordinal >= 0 && ordinal < capacity && externalIds.get(ordinal) != NO_DOC;
+    }
+
+    /**
+     * Gets the external ID of a Document, the ID parsed from its file name.
+     * @param ordinal Ordinal of the Document.
+     * @return External ID or -1 if the Document isn't stored.
+     */
+    public int getExternalId(int ordinal){
+        return contains(ordinal) ? externalIds.get(ordinal) : NO_DOC;
+    }
+
+    /**
+     * Gets the highest token frequency of a Document.
+     * @param ordinal Ordinal of the Document.
+     * @return Highest token frequency or 0 if the Document isn't stored.
+     */
+    public int getHighestTokenFreq(int ordinal){
+        return contains(ordinal) ? highestTokenFreqs.get(ordinal) : 0;
+    }
+
+    /**
+     * Gets the length of a Document, the number of tokens indexed in it.
+     * @param ordinal Ordinal of the Document.
+     * @return Length or 0 if the Document isn't stored.
+     */
+    public int getLength(int ordinal){
+        return contains(ordinal) ? lengths.get(ordinal) : 0;
+    }
+
+    /**
+     * Gets the average length of the Documents stored.
+     * @return Average number of tokens indexed per Document.
+     */
+    public double getAverageLength(){
+        return size == 0 ? 0 : totalLength / (double) size;
+    }
+
+    /**
+     * Gets the title of a Document without materializing the rest of it.
+     * @param ordinal Ordinal of the Document.
+     * @return Title or null if the Document isn't stored.
+     */
+    public String getTitle(int ordinal){
+        if(!contains(ordinal))
+            return null;
+        return decode(offsets.get(2 * ordinal), offsets.get(2 * ordinal + 1));
+    }
+
+    /**
+     * Materializes a Document from the store.
+     * @param ordinal Ordinal of the Document.
+     * @return Document or null if not stored.
+     */
+    public Doc getDoc(int ordinal){
+        if(!contains(ordinal))
+            return null;
+
+        int titleStart = offsets.get(2 * ordinal);
+        int pathStart = offsets.get(2 * ordinal + 1);
+        int end = offsets.get(2 * ordinal + 2);
+        return new Doc(ordinal, externalIds.get(ordinal), decode(titleStart, pathStart), decode(pathStart, end), highestTokenFreqs.get(ordinal));
+    }
+
+    /**
+     * Decodes a String from the blob.
+     * @param start Start of the String.
+     * @param end End of the String, exclusive.
+     * @return Decoded String.
+     */
+    private String decode(int start, int end){
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = strings.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the store to a stream.
+     * @param out Stream to write to.
+     * @throws IOException If writing fails.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(strings.limit());
+        writeInts(out, externalIds);
+        writeInts(out, highestTokenFreqs);
+        writeInts(out, lengths);
+        writeInts(out, offsets);
+
+        byte[] chunk = new byte[1 << 16];
+        ByteBuffer view = strings.duplicate();
+        view.rewind();
+        while(view.hasRemaining()){
+            int length = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Reads a store written by {@link #writeTo(DataOutputStream)}.
+     * @param in Stream to read from.
+     * @return Store read.
+     * @throws IOException If reading fails.
+     */
+    static DocStore readFrom(DataInputStream in) throws IOException {
+        int capacity = in.readInt();
+        int stringsSize = in.readInt();
+        IntBuffer externalIds = readInts(in, capacity);
+        IntBuffer highestTokenFreqs = readInts(in, capacity);
+        IntBuffer lengths = readInts(in, capacity);
+        IntBuffer offsets = readInts(in, 2 * capacity + 1);
+
+        ByteBuffer strings = ByteBuffer.allocateDirect(Math.max(stringsSize, 1));
+        strings.limit(stringsSize);
+        byte[] chunk = new byte[1 << 16];
+        while(strings.hasRemaining()){
+            int length = Math.min(chunk.length, strings.remaining());
+            in.readFully(chunk, 0, length);
+            strings.put(chunk, 0, length);
+        }
+        strings.flip();
+        return new DocStore(externalIds, highestTokenFreqs, lengths, offsets, strings);
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer ints) throws IOException {
+        for(int i = 0; i < ints.capacity(); i++)
+            out.writeInt(ints.get(i));
+    }
+
+    private static IntBuffer readInts(DataInputStream in, int count) throws IOException {
+        byte[] bytes = new byte[count * Integer.BYTES];
+        in.readFully(bytes);
+        return directInts(count).put(ByteBuffer.wrap(bytes).asIntBuffer()).flip();
+    }
+
+    private static IntBuffer directInts(int count){
+        return ByteBuffer.allocateDirect(Math.max(count, 1) * Integer.BYTES).asIntBuffer().limit(count).slice();
+    }
+
+    /**
+     * Collects Documents as they're loaded and builds the store.
+     * Documents may be added in any order of ordinal.
+     */
+    public static class Builder {
+
+        private IntList ordinals;
+        private IntList externalIds;
+        private IntList highestTokenFreqs;
+        private IntList lengths;
+        private IntList titleStarts;
+        private IntList pathStarts;
+        private ByteBuffer strings;
+        private int capacity;
+
+        /** Creates an empty Builder. */
+        public Builder(){
+            ordinals = new IntList();
+            externalIds = new IntList();
+            highestTokenFreqs = new IntList();
+            lengths = new IntList();
+            titleStarts = new IntList();
+            pathStarts = new IntList();
+            strings = ByteBuffer.allocateDirect(1 << 16);
+        }
+
+        /**
+         * Adds a Document.
+         * @param ordinal Ordinal of the Document.
+         * @param externalId ID parsed from the Document file name.
+         * @param title Title of the Document.
+         * @param path Path to the Document.
+         * @param highestTokenFreq Highest found token frequency in the Document.
+         * @param length Number of tokens indexed in the Document.
+         */
+        public void add(int ordinal, int externalId, String title, String path, int highestTokenFreq, int length){
+            ordinals.add(ordinal);
+            externalIds.add(externalId);
+            highestTokenFreqs.add(highestTokenFreq);
+            lengths.add(length);
+            titleStarts.add(strings.position());
+            put(title.getBytes(StandardCharsets.UTF_8));
+            pathStarts.add(strings.position());
+            put(path.getBytes(StandardCharsets.UTF_8));
+            capacity = Math.max(capacity, ordinal + 1);
+        }
+
+        /**
+         * Gets the number of Documents added.
+         * @return Document count.
+         */
+        public int size(){
+            return ordinals.size();
+        }
+
+        /**
+         * Builds the store, placing each Document at its ordinal. If an
+         * ordinal was added more than once the last one added is kept.
+         * @return Built store.
+         */
+        public DocStore build(){
+            int n = ordinals.size();
+            int[] added = new int[capacity];
+            Arrays.fill(added, -1);
+            for(int i = 0; i < n; i++)
+                added[ordinals.get(i)] = i;
+
+            IntBuffer ids = directInts(capacity);
+            IntBuffer freqs = directInts(capacity);
+            IntBuffer lens = directInts(capacity);
+            IntBuffer offsets = directInts(2 * capacity + 1);
+            ByteBuffer ordered = ByteBuffer.allocateDirect(Math.max(strings.position(), 1));
+
+            ByteBuffer source = strings.duplicate();
+            for(int ordinal = 0; ordinal < capacity; ordinal++){
+                int doc = added[ordinal];
+                if(doc < 0){
+                    ids.put(NO_DOC);
+                    freqs.put(0);
+                    lens.put(0);
+                    offsets.put(ordered.position()).put(ordered.position());
+                    continue;
+                }
+
+                int start = titleStarts.get(doc);
+                int end = doc + 1 < n ? titleStarts.get(doc + 1) : strings.position();
+                ids.put(externalIds.get(doc));
+                freqs.put(highestTokenFreqs.get(doc));
+                lens.put(lengths.get(doc));
+                offsets.put(ordered.position());
+                offsets.put(ordered.position() + pathStarts.get(doc) - start);
+
+                source.limit(end).position(start);
+                ordered.put(source);
+            }
+            offsets.put(ordered.position());
+            ordered.flip();
+
+            strings = null;
+            return new DocStore(ids.flip(), freqs.flip(), lens.flip(), offsets.flip(), ordered);
+        }
+
+        private void put(byte[] bytes){
+            if(strings.remaining() < bytes.length){
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(strings.capacity() * 2, strings.position() + bytes.length));
+                strings.flip();
+                grown.put(strings);
+                strings = grown;
+            }
+            strings.put(bytes);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package cs437.bsu.search.engine.index;
 
+import cs437.bsu.search.engine.container.TermDictionary;
 import cs437.bsu.search.engine.container.Triple;
 import cs437.bsu.search.engine.corpus.Document;
 import cs437.bsu.search.engine.corpus.Token;
+import cs437.bsu.search.engine.corpus.create.IndexingStats;
 import cs437.bsu.search.engine.util.FileUtility;
 import cs437.bsu.search.engine.util.LoggerInitializer;
 import org.slf4j.Logger;
@@ -12,6 +14,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,8 +24,8 @@ import java.util.Map;
  */
 public class IndexCreator {
 
-    /** Helps Keep track of the current Token ID */
-    private static long CURR_TOKEN_PK = 1;
+    /** Helps Keep track of the next Document ordinal */
+    private static int CURR_DOC_ORDINAL = 0;
 
     /** Used for the Database. Amount of entries per Replace command. */
     private static long REPLACE_MAX_ROWS = 10_000;
@@ -33,6 +36,12 @@ public class IndexCreator {
     /** Index File Extensions */
     private static String DML_EXTENSION = ".sql";
 
+    /** Property to record the positions of each token within its documents. */
+    public static final String POSITIONS_PROP = "index.positions";
+
+    /** Property for the KB of each document's text kept for snippets, 0 to keep none. */
+    public static final String SUMMARY_KB_PROP = "index.summary.kb";
+
     private static IndexCreator INSTANCE;
     private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(IndexCreator.class);
 
@@ -51,8 +60,8 @@ public class IndexCreator {
         /** Document Info File */
         Document(
                 "dml_documents",
-                "Replace into Documents (DocumentID,HighestTermFreq,Title,Path) VALUES ",
-                "%n(%d,%d,\"%s\",\"%s\")"),
+                "Replace into Documents (DocumentID,ExternalID,HighestTermFreq,Length,Title,Path) VALUES ",
+                "%n(%d,%d,%d,%d,\"%s\",\"%s\")"),
         /** Token Info File */
         Token(
                 "dml_tokens",
@@ -62,7 +71,17 @@ public class IndexCreator {
         Intersection(
                 "dml_intersection",
                 "Replace into Intersection (TokenFK,DocumentID,Frequency) VALUES ",
-                "%n(%d,%d,%d)");
+                "%n(%d,%d,%d)"),
+        /** Token Positions File, only written if {@value IndexCreator#POSITIONS_PROP} is set */
+        Positions(
+                "dml_positions",
+                "Replace into Positions (TokenFK,DocumentID,Positions) VALUES ",
+                "%n(%d,%d,\"%s\")"),
+        /** Title Token File */
+        Title(
+                "dml_titles",
+                "Replace into Titles (TokenFK,DocumentID) VALUES ",
+                "%n(%d,%d)");
 
         private String fileName;
         private String replaceCommand;
@@ -81,22 +100,36 @@ public class IndexCreator {
         }
     }
 
-    private Map<Long, Map<String, Long>> tokens;
+    /** Tokens saved so far. A Token's ID is its dictionary ID + 1. */
+    private TermDictionary.Builder tokens;
     private Map<DMLType, Triple<File, BufferedWriter, Integer>> dmlWriterMap;
+    private boolean savePositions;
+    private SummaryStore.Writer summaries;
 
     /**
      * Creates an Index Creator. This class adds a shutdown
      * hook to correctly close and flush the files before this
-     * application closes.
+     * application closes. A replace command left open is
+     * closed first, whatever was saved last.
      */
     private IndexCreator() {
-        tokens = new HashMap<>();
+        tokens = new TermDictionary.Builder(1 << 16);
         dmlWriterMap = new HashMap<>();
+        savePositions = Boolean.parseBoolean(System.getProperty(POSITIONS_PROP, "false"));
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (summaries != null)
+                    summaries.close();
+            } catch (Exception e) {
+                LOGGER.error("Failed to close Summary Writer.", e);
+            }
+
             for (Triple<File, BufferedWriter, Integer> file : dmlWriterMap.values()) {
                 try {
                     if (file != null) {
+                        if (file.c > 1)
+                            file.b.write(";");
                         file.b.close();
                     }
                 } catch (Exception e) {
@@ -112,59 +145,104 @@ public class IndexCreator {
 
         try {
             for (DMLType type : DMLType.values()) {
+                if (type == DMLType.Positions && !savePositions)
+                    continue;
+
                 File f = new File(type.fileName + "-1" + DML_EXTENSION);
                 dmlWriterMap.put(type, new Triple<>(f, new BufferedWriter(new FileWriter(f)), 1));
             }
+
+            if (getSummaryLimit() > 0)
+                summaries = new SummaryStore.Writer(new File(SummaryStore.FILE_NAME));
         } catch (IOException e) {
             LOGGER.error("Failed to setup writer for one or more DML(s).", e);
             System.exit(-1);
         }
     }
 
+    /**
+     * Assigns the next dense Document ordinal. Ordinals are used as the
+     * Document ID within the Index while the ID parsed from the Document
+     * file name is kept as its external ID.
+     * @return Document ordinal.
+     */
+    public synchronized int nextDocOrdinal() {
+        return CURR_DOC_ORDINAL++;
+    }
+
     /**
      * Saves a Document to a Document File.
+     * @param ordinal Ordinal assigned to the document.
      * @param highestFreq Term count that has the highest frequency in the document.
+     * @param length Number of tokens indexed in the document.
      * @param doc Document to save.
      * @param lastDoc True if this is the last document to save.
      */
-    public void saveDocumentData(int highestFreq, Document doc, boolean lastDoc) {
-        saveData(DMLType.Document, lastDoc, doc.getId(), highestFreq, doc.getTitle(), FileUtility.getRelativeLocation(doc.getFile()).replace("\\", "\\\\"));
+    public void saveDocumentData(int ordinal, int highestFreq, int length, Document doc, boolean lastDoc) {
+        saveData(DMLType.Document, lastDoc, ordinal, doc.getId(), highestFreq, length, doc.getTitle(), FileUtility.getRelativeLocation(doc.getFile()).replace("\\", "\\\\"));
+    }
+
+    /**
+     * Gets the number of characters of each Document's text kept for snippets.
+     * @return Characters to keep, 0 if summaries aren't kept.
+     */
+    public static int getSummaryLimit() {
+        return Math.max(0, Integer.parseInt(System.getProperty(SUMMARY_KB_PROP, "8"))) * 1024;
+    }
+
+    /**
+     * Saves the text of a Document to the Summary File.
+     * @param ordinal Ordinal assigned to the document.
+     * @param summary Sentences of the document, one per line.
+     */
+    public void saveSummary(int ordinal, String summary) {
+        if (summaries == null)
+            return;
+
+        try {
+            summaries.add(ordinal, summary);
+        } catch (IOException e) {
+            LOGGER.atError().setCause(e).log("Failed to save summary for document: {}", ordinal);
+        }
     }
 
     /**
      * Saves a Token to a Token and Intersection File.
-     * @param docId ID of the document this token is related to.
+     * @param docId Ordinal of the document this token is related to.
      * @param token Token to save.
      * @param lastToken True if this is the last token in the last document being saved.
      */
     public synchronized void saveTokenData(int docId, Token token, boolean lastToken) {
-        long tokenPk = -1;
-        boolean newToken;
-
         // Figure out if this token has been saved before
         String tkn = token.getToken();
-        long tokenHash = token.getHash();
-        Map<String, Long> hashValueMap = tokens.get(tokenHash);
-        if (newToken = (hashValueMap == null)) {
-            hashValueMap = new HashMap<>();
-            tokenPk = CURR_TOKEN_PK++;
-            hashValueMap.put(tkn, tokenPk);
-            tokens.put(tokenHash, hashValueMap);
-        }else{
-            Long pk = hashValueMap.get(tkn);
-            if (newToken = (pk == null)) {
-                tokenPk = CURR_TOKEN_PK++;
-                hashValueMap.put(tkn, tokenPk);
-            } else {
-                tokenPk = pk;
-            }
-        }
+        int saved = tokens.size();
+        long tokenPk = tokens.add(tkn) + 1L;
 
         // Save to a token file if it's a new token.
-        if (newToken)
-            saveData(DMLType.Token, lastToken, tokenPk, tkn, tokenHash);
+        if (tokens.size() > saved)
+            saveData(DMLType.Token, lastToken, tokenPk, tkn, token.getHash());
 
         saveData(DMLType.Intersection, lastToken, tokenPk, docId, token.getFrequency());
+        if (savePositions)
+            saveData(DMLType.Positions, lastToken, tokenPk, docId, Positions.toText(token.getPositions()));
+    }
+
+    /**
+     * Saves the Tokens found in the title of a Document to a Title File.
+     * The Tokens must have already been saved for the Document. The last
+     * replace command is closed once the file is closed.
+     * @param docId Ordinal of the document.
+     * @param titleTokens Tokens found in the title.
+     */
+    public synchronized void saveTitleData(int docId, List<Token> titleTokens) {
+        for (int i = 0; i < titleTokens.size(); i++) {
+            int id = tokens.indexOf(titleTokens.get(i).getToken());
+            if (id < 0) {
+                LOGGER.warn("Title Token wasn't saved with its Document. DocID={},Token={}", docId, titleTokens.get(i).getToken());
+                continue;
+            }
+            saveData(DMLType.Title, false, id + 1L, docId);
+        }
     }
 
     /**
@@ -178,27 +256,37 @@ public class IndexCreator {
         Triple<File, BufferedWriter, Integer> fileData = dmlWriterMap.get(type);
 
         try {
-            if (fileData.c == 1)
+            long written = 0;
+            if (fileData.c == 1) {
                 fileData.b.write(type.replaceCommand);
+                written += type.replaceCommand.length();
+            } else {
+                fileData.b.write(",");
+            }
 
-            fileData.b.write(String.format(type.dmlRowFmt, data));
+            String row = String.format(type.dmlRowFmt, data);
+            fileData.b.write(row);
+            IndexingStats.getInstance().bytesWritten(type.name(), written + row.length() + 1);
 
-            if (lastItem)
+            if (lastItem) {
                 fileData.b.write(";");
+                fileData.c = 1;
+                return;
+            }
         } catch (IOException e) {
             LOGGER.atError().setCause(e).log("Failed to add row for type: {}", type);
         }
 
         // Update file information for future additions
-        if (!lastItem)
-            updateFile(type, fileData);
+        updateFile(type, fileData);
     }
 
     /**
      * Updates the current file. This makes sure replace commands are placed after
      * {@link #REPLACE_MAX_ROWS} has been reached for this file and resets. Also,
      * if this file gets to big another one is created and the old one flushed and
-     * closed.
+     * closed. Rows are separated as the next one is saved, so the last row of a
+     * file is never left with a trailing separator.
      * @param type Type of file information to update.
      * @param fileData File data to update.
      */
@@ -218,7 +306,6 @@ public class IndexCreator {
                     fileData.b.newLine();
                     fileData.c = 1;
                 } else {
-                    fileData.b.write(",");
                     fileData.c++;
                 }
             }
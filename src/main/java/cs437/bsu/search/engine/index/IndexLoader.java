@@ -1,6 +1,8 @@
 package cs437.bsu.search.engine.index;
 
+import cs437.bsu.search.engine.container.TermDictionary;
 import cs437.bsu.search.engine.util.LoggerInitializer;
+import cs437.bsu.search.engine.util.MemoryTelemetry;
 import cs437.bsu.search.engine.util.TaskExecutor;
 import cs437.bsu.search.engine.util.Text;
 import org.slf4j.Logger;
@@ -8,7 +10,9 @@ import org.slf4j.Logger;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
@@ -22,6 +26,13 @@ public class IndexLoader {
     private static IndexLoader INSTANCE;
     private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(IndexLoader.class);
 
+    /** Property for the memory in MB the postings may take up on heap. Defaults to 0, which is no limit. */
+    public static final String MEMORY_BUDGET_PROP = "index.memory.budget";
+    /** Property for the file postings over the memory budget are kept in. Defaults to a file in the Index directory. */
+    public static final String POSTINGS_FILE_PROP = "index.postings.file";
+    /** Property to split the postings of frequent terms into impact ordered tiers. Defaults to false. */
+    public static final String IMPACT_ORDER_PROP = "index.impact.ordered";
+
     /**
      * Gets this classes instance.
      * @return Class Instance.
@@ -32,40 +43,117 @@ public class IndexLoader {
         return INSTANCE;
     }
 
-    private Map<Integer, Doc> idDocMap;
+    private DocStore docStore;
+    private DocStore.Builder docBuilder;
     private Map<Integer, Term> idTokenMap;
-    private Map<Long, Map<String, Term>> hashTokenMap;
-    private boolean finishedLoading;
+    private TermDictionary termDictionary;
+    private Term[] terms;
+    private PostingsFile postingsFile;
+    private SummaryStore summaries;
+    private SpellingCorrector corrector;
+    private volatile boolean finishedLoading;
     private long intersectionsLoaded;
+    private long positionBytesLoaded;
+    private long titlesLoaded;
 
     /** Sets up the Index Loader. */
     private IndexLoader(){
-        idDocMap = new HashMap<>();
+        docStore = new DocStore.Builder().build();
         idTokenMap = new HashMap<>();
-        hashTokenMap = new HashMap<>();
+        termDictionary = new TermDictionary.Builder().build();
+        terms = new Term[0];
         finishedLoading = false;
         intersectionsLoaded = 0;
+
+        MemoryTelemetry telemetry = MemoryTelemetry.getInstance();
+        telemetry.addEstimator("DocStore(off-heap)", () -> docStore.getOffHeapBytes());
+        telemetry.addEstimator("TermDictionary", () -> termDictionary.estimateSize());
+        telemetry.addEstimator("Terms", () -> {
+            long bytes = 16 + 4L * terms.length;
+            for(Term term : terms)
+                bytes += term.estimateSize();
+            return bytes;
+        });
+        telemetry.addEstimator("Postings(on-disk)", () -> postingsFile == null ? 0L : postingsFile.getSize());
+        telemetry.addEstimator("SpellingCorrector", () -> corrector == null ? 0L : corrector.estimateSize());
+        telemetry.addEstimator("Summaries(offsets)", () -> summaries == null ? 0L : summaries.getHeapBytes());
     }
 
     /**
-     * Dictates if this Index Loader has Finished Loading
-     * both the Index and AOL Query Logs.
+     * Dictates if this Index Loader has Finished Loading the Index.
      * @return True if finished otherwise false.
      * @see #loadIndex(File)
-     * @see #loadQueryLogs(File)
      */
     public boolean isFinishedLoading(){
         return finishedLoading;
     }
 
     /**
-     * Given a Document ID the Real Document
-     * is retrieved matching it.
+     * Given a Document ID, its ordinal, the Real Document
+     * is retrieved matching it. The Document is
+     * materialized from the {@link DocStore} on
+     * every call so only request displayed ones.
      * @param id ID of the document to retrieve.
      * @return Document associated to the ID or null if none.
      */
     public Doc getDocById(int id){
-        return idDocMap.get(id);
+        return docStore.getDoc(id);
+    }
+
+    /**
+     * Gets the highest token frequency of a Document
+     * without materializing it.
+     * @param id ID of the document.
+     * @return Highest token frequency or 0 if none.
+     */
+    public int getHighestTokenFreq(int id){
+        return docStore.getHighestTokenFreq(id);
+    }
+
+    /**
+     * Gets the ID of a Document parsed from its file name.
+     * @param id Ordinal of the Document.
+     * @return External ID or -1 if the Document isn't loaded.
+     */
+    public int getExternalId(int id){
+        return docStore.getExternalId(id);
+    }
+
+    /**
+     * Gets the title of a Document without materializing it.
+     * @param id ID of the document.
+     * @return Document title or null if none.
+     */
+    public String getDocTitle(int id){
+        return docStore.getTitle(id);
+    }
+
+    /**
+     * Gets the length of a Document, the number of tokens
+     * indexed in it, without materializing it.
+     * @param id ID of the document.
+     * @return Document length or 0 if none.
+     */
+    public int getDocLength(int id){
+        return docStore.getLength(id);
+    }
+
+    /**
+     * Gets the average length of the loaded Documents.
+     * @return Average number of tokens indexed per Document.
+     */
+    public double getAverageDocLength(){
+        return docStore.getAverageLength();
+    }
+
+    /**
+     * Gets the number of Document ordinals, one more than the
+     * highest ordinal loaded. Arrays indexed by Document ID
+     * should be of this length.
+     * @return Document ordinal count.
+     */
+    public int getDocCapacity(){
+        return docStore.getCapacity();
     }
 
     /**
@@ -73,86 +161,199 @@ public class IndexLoader {
      * @return Documents Loaded count.
      */
     public int getNumDocs(){
-        return idDocMap.size();
+        return docStore.size();
     }
 
     /**
-     * Given a Term Hash-Value and String the matching token
-     * is found.
-     * @param hash Hash value of the String.
+     * Given a Term String the matching token is found.
      * @param s String form.
-     * @return Term associated to the hash and String or null if none.
+     * @return Term associated to the String or null if none.
      */
-    public Term getTermByHashToken(long hash, String s){
-        Map<String, Term> sameHashValues = hashTokenMap.get(hash);
-        if(sameHashValues != null)
-            return sameHashValues.get(s);
-        return null;
+    public Term getTerm(String s){
+        int id = termDictionary.indexOf(s);
+        return id < 0 ? null : terms[id];
     }
 
     /**
-     * Loads the Index from the directory provided. Only files ending in
-     * .SQL are loaded except for DDL files. Note that once this method
-     * is invoked a Thread will be kicked off to load the index. Refer
-     * to {@link #isFinishedLoading()} to know when this is thread has
-     * completed.
-     * @param dir Directory to load Index from.
+     * Gets the closest Term to a token missing from the Index.
+     * @param s Token missing from the Index.
+     * @return Closest Term or null if none is close enough or
+     * spelling correction is disabled by the {@value SpellingCorrector#DISTANCE_PROP}.
      */
-    public void loadIndex(File dir){
-        LOGGER.info("Loading index from: {}", dir.getAbsolutePath());
+    public Term getCorrection(String s){
+        return corrector == null ? null : corrector.correct(s);
+    }
 
-        // Gets required files
+    /**
+     * Gets the Index files in a directory. These are all
+     * files ending in .SQL except for DDL files.
+     * @param dir Directory holding the Index.
+     * @return Index files.
+     */
+    public static File[] getIndexFiles(File dir){
         Pattern sqlFilePattern = Pattern.compile("^.*\\.sql$");
         File[] files = dir.listFiles((File directory, String name) -> {
             if(directory.compareTo(dir) == 0 && !name.equalsIgnoreCase("ddl.sql")) {
-                LOGGER.debug("Loading index file: {}", name);
+                LOGGER.debug("Found index file: {}", name);
                 return sqlFilePattern.matcher(name).matches();
             }
             return false;
         });
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Dictates if the document links of some Terms are
+     * kept on disk due to the {@value #MEMORY_BUDGET_PROP}.
+     * @return true if some links are on disk, otherwise false.
+     */
+    public boolean hasPostingsOnDisk(){
+        return postingsFile != null;
+    }
+
+    /**
+     * Gets the text of a Document kept when the Index was created.
+     * @param id Ordinal of the Document.
+     * @return Sentences of the Document, one per line, or null if the Index has no summaries.
+     */
+    public String getSummary(int id){
+        if(summaries == null)
+            return null;
+
+        try{
+            return summaries.getSummary(id);
+        }catch (IOException e){
+            LOGGER.atError().setCause(e).log("Failed to read summary of Document: {}", id);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the Document summaries of an Index if it has them.
+     * Indexes created with the {@value IndexCreator#SUMMARY_KB_PROP} at 0 have none.
+     * @param dir Directory holding the Index.
+     */
+    void openSummaries(File dir){
+        File file = new File(dir, SummaryStore.FILE_NAME);
+        if(!file.isFile()) {
+            LOGGER.info("No Document summaries found. Snippets are made from the corpus files.");
+            return;
+        }
+
+        try{
+            summaries = SummaryStore.open(file);
+            LOGGER.info("Opened Document summaries: {}. Size={} bytes", file, summaries.getSize());
+        }catch (IOException e){
+            LOGGER.atError().setCause(e).log("Failed to open Document summaries: {}", file);
+        }
+    }
+
+    /**
+     * Gets the store of loaded Documents.
+     * @return Document store.
+     */
+    DocStore getDocStore(){
+        return docStore;
+    }
+
+    /**
+     * Gets all loaded Terms.
+     * @return Loaded Terms.
+     */
+    List<Term> getTerms(){
+        return Arrays.asList(terms);
+    }
+
+    /**
+     * Replaces the loaded Index with one restored from a snapshot.
+     * @param docs Documents restored.
+     * @param terms Terms restored.
+     * @see IndexSnapshot
+     */
+    void restore(DocStore docs, List<Term> terms){
+        docStore = docs;
+        setTerms(terms);
+        orderByImpact();
+        idTokenMap = null;
+        LOGGER.info("Restored {} Tokens and {} Documents.", terms.size(), docs.size());
+        finishedLoading = true;
+    }
+
+    /**
+     * Loads the Index from the directory provided. Only files ending in
+     * .SQL are loaded except for DDL files. Note that once this method
+     * is invoked Threads will be kicked off to load the index. Either
+     * wait on the returned future or refer to {@link #isFinishedLoading()}
+     * to know when loading has completed.
+     * @param dir Directory to load Index from.
+     * @return Future that completes once the index is loaded.
+     */
+    public CompletableFuture<Void> loadIndex(File dir){
+        LOGGER.info("Loading index from: {}", dir.getAbsolutePath());
+
+        // Gets required files
+        File[] files = getIndexFiles(dir);
+        openSummaries(dir);
 
         // Split files into matching groups
         List<File> documents = new ArrayList<>();
         List<File> tokens = new ArrayList<>();
         List<File> intersections = new ArrayList<>();
+        List<File> positions = new ArrayList<>();
+        List<File> titles = new ArrayList<>();
         for(File file : files){
             if(file.getName().contains("intersection"))
                 intersections.add(file);
+            else if(file.getName().contains("positions"))
+                positions.add(file);
+            else if(file.getName().contains("titles"))
+                titles.add(file);
             else if(file.getName().contains("tokens"))
                 tokens.add(file);
             else
                 documents.add(file);
         }
 
-        LOGGER.debug("Found {} intersection file(s), {} token file(s), and {} document file(s).", intersections.size(), tokens.size(), documents.size());
-
-        // Start a task to load the files into the program.
-        TaskExecutor.StartTask(() -> {
-            LOGGER.debug("Starting to load Tokens and Documents simultaneously.");
-            Thread tok = new Thread(() -> loadTokens(tokens));
-            Thread doc = new Thread(() -> loadDocuments(documents));
-            tok.start();
-            doc.start();
+        LOGGER.debug("Found {} intersection file(s), {} position file(s), {} title file(s), {} token file(s), and {} document file(s).",
+                intersections.size(), positions.size(), titles.size(), tokens.size(), documents.size());
+
+        // Tokens and Documents are loaded simultaneously then the intersections linking them.
+        LOGGER.debug("Starting to load Tokens and Documents simultaneously.");
+        CompletableFuture<Void> tok = TaskExecutor.StartAsyncTask(() -> loadTokens(tokens));
+        docBuilder = new DocStore.Builder();
+        CompletableFuture<Void> doc = TaskExecutor.StartAsyncTask(() -> {
+            loadDocuments(documents);
+            docStore = docBuilder.build();
+            docBuilder = null;
+        });
 
-            while(tok.getState() != Thread.State.TERMINATED || doc.getState() != Thread.State.TERMINATED){
-                try{
-                    Thread.sleep(1000);
-                }catch (Exception e){}
-            }
+        return CompletableFuture.allOf(tok, doc).thenRunAsync(() -> {
             LOGGER.trace("Tokens and Document loaded.");
-            cleanup();
-        }, () -> {
+            logMemory();
+
+            planPostings(dir, intersections);
+
             LOGGER.info("Starting to load intersections.");
             loadIntersections(intersections);
+            if(!positions.isEmpty()) {
+                LOGGER.info("Starting to load positions.");
+                loadPositions(positions);
+            }
+            LOGGER.info("Starting to load titles.");
+            loadTitles(titles);
             long tokensLoaded = idTokenMap.size();
 
             transitionTokenMap();
-            cleanup();
+            orderByImpact();
+            logMemory();
 
             LOGGER.info("Index loading complete.");
-            LOGGER.info("Loaded {} Tokens, {} Documents, and {} Intersections.", tokensLoaded, idDocMap.size(), intersectionsLoaded);
+            LOGGER.info("Loaded {} Tokens, {} Documents, and {} Intersections.", tokensLoaded, docStore.size(), intersectionsLoaded);
+            LOGGER.info("Loaded {} Title Tokens.", titlesLoaded);
+            if(positionBytesLoaded > 0)
+                LOGGER.info("Loaded {} bytes of compressed positions. {} bytes per Intersection.", positionBytesLoaded, String.format("%.2f", positionBytesLoaded / (double) Math.max(intersectionsLoaded, 1)));
             this.finishedLoading = true;
-        });
+        }, (Runnable r) -> TaskExecutor.StartTask(r, () -> {}));
     }
 //    /**
 //     * Loads the AOL Query logs the directory provided. All files ending in .txt
@@ -173,38 +374,74 @@ public class IndexLoader {
 
     /**
      * Transitions all tokens from the {@link #idTokenMap} to the
-     * {@link #hashTokenMap} for post index usage. Note that the
+     * {@link #termDictionary} for post index usage. Note that the
      * idTokenMap will be set to null to lower the amount of memory
      * consumed.
      */
     private void transitionTokenMap(){
+        List<Term> tokens = new ArrayList<>(idTokenMap.size());
         Iterator<Map.Entry<Integer, Term>> it = idTokenMap.entrySet().iterator();
         while(it.hasNext()){
             Term token = it.next().getValue();
             it.remove();
-
-            Map<String, Term> tokens = hashTokenMap.get(token.getHashValue());
-            if(tokens == null){
-                tokens = new HashMap<>();
-                hashTokenMap.put(token.getHashValue(), tokens);
-            }
-            tokens.put(token.getToken(), token);
+            token.finish();
+            tokens.add(token);
         }
         idTokenMap = null;
+        setTerms(tokens);
+    }
+
+    /**
+     * Builds the {@link #termDictionary} over the Terms provided,
+     * each Term being kept at its ID in the dictionary, and the
+     * {@link SpellingCorrector} over the same Terms.
+     * @param tokens Terms to look up by their String form.
+     */
+    private void setTerms(Collection<Term> tokens){
+        TermDictionary.Builder builder = new TermDictionary.Builder(tokens.size());
+        Term[] byId = new Term[tokens.size()];
+        for(Term token : tokens)
+            byId[builder.add(token.getToken())] = token;
+
+        terms = Arrays.copyOf(byId, builder.size());
+        termDictionary = builder.build();
+
+        int distance = Math.min(2, Integer.parseInt(System.getProperty(SpellingCorrector.DISTANCE_PROP, "1")));
+        if(distance > 0) {
+            long start = System.currentTimeMillis();
+            corrector = new SpellingCorrector(terms, distance);
+            LOGGER.info("Spelling corrector built in {} ms. Max distance={},Size={} bytes", System.currentTimeMillis() - start, distance, corrector.estimateSize());
+        }
     }
 
     /**
-     * Runs the Garbage Collector and logs the
-     * current used memory consumption.
+     * Splits the postings of frequent Terms into impact ordered tiers
+     * if the {@value #IMPACT_ORDER_PROP} is set. The Documents must be
+     * loaded first as the impact is normalized by their highest token
+     * frequency.
      */
-    private void cleanup(){
-        LOGGER.info("Running Garbage Collector.");
-        Runtime r = Runtime.getRuntime();
-        r.gc();
+    private void orderByImpact(){
+        if(!Boolean.parseBoolean(System.getProperty(IMPACT_ORDER_PROP, "false")))
+            return;
+
+        long start = System.currentTimeMillis();
+        int ordered = 0;
+        for(Term term : terms){
+            term.orderByImpact(docStore::getHighestTokenFreq);
+            if(term.isImpactOrdered())
+                ordered++;
+        }
+        LOGGER.info("Ordered the postings of {} Tokens by impact in {} ms.", ordered, System.currentTimeMillis() - start);
+    }
 
-        long maxMemory = r.maxMemory();
-        long usedMemory = r.totalMemory() - r.freeMemory();
-        LOGGER.warn("Using {}% JVM Memory.", String.format("%05.2f", usedMemory / (float) maxMemory));
+    /**
+     * Logs the current memory consumption. No garbage
+     * collection is triggered to take the reading.
+     */
+    private void logMemory(){
+        MemoryTelemetry telemetry = MemoryTelemetry.getInstance();
+        telemetry.sample();
+        LOGGER.info(telemetry.getReport());
     }
 
     /**
@@ -217,46 +454,16 @@ public class IndexLoader {
         // save data if it's a data line
         Consumer<String> intersectionReader = (String line) -> {
             if(isValidEntry(line)){
-                String tokId = "";
-                String docId = "";
-                String freq = "";
-
-                byte location = 0;
-                char[] chars = line.toCharArray();
-                for(int i = 1; i < chars.length; i++){
-                    char curr = chars[i];
-                    switch (location){
-                        case 0: // Process Token ID
-                            if(Text.isNumeric(curr))
-                                tokId += curr;
-                            else
-                                location++;
-                            break;
-                        case 1: // Process Document ID
-                            if(Text.isNumeric(curr))
-                                docId += curr;
-                            else
-                                location++;
-                            break;
-                        default: // Process Token Frequency
-                            if(Text.isNumeric(curr)) {
-                                freq += curr;
-                            }else {
-                                location++;
-                                i += 10;
-                            }
-                            break;
-                    }
-                }
+                int[] entry = parseIntersection(line);
 
                 // Catch in case no matching document or token has been found previously.
                 try {
-                    idTokenMap.get(Integer.parseInt(tokId)).addDocumentLink(Integer.parseInt(docId), Integer.parseInt(freq));
+                    idTokenMap.get(entry[0]).addDocumentLink(entry[1], entry[2]);
                 }catch (NullPointerException e){
-                    LOGGER.atError().setCause(e).log("Failed to load data. TokenID={},DocumentToken={},Freq={}", tokId, docId, freq);
+                    LOGGER.atError().setCause(e).log("Failed to load data. TokenID={},DocumentToken={},Freq={}", entry[0], entry[1], entry[2]);
                     throw e;
                 }
-                LOGGER.trace("Loading Intersection. TokenID={},DocumentToken={},Freq={}", tokId, docId, freq);
+                LOGGER.trace("Loading Intersection. TokenID={},DocumentToken={},Freq={}", entry[0], entry[1], entry[2]);
                 intersectionsLoaded++;
             }
         };
@@ -265,6 +472,183 @@ public class IndexLoader {
             readDocument(interFile, intersectionReader);
     }
 
+    /**
+     * Parses an Intersection data line.
+     * @param line Line of an Intersection file.
+     * @return Token ID, Document ID and Token Frequency.
+     */
+    private int[] parseIntersection(String line){
+        String tokId = "";
+        String docId = "";
+        String freq = "";
+
+        byte location = 0;
+        char[] chars = line.toCharArray();
+        for(int i = 1; i < chars.length; i++){
+            char curr = chars[i];
+            switch (location){
+                case 0: // Process Token ID
+                    if(Text.isNumeric(curr))
+                        tokId += curr;
+                    else
+                        location++;
+                    break;
+                case 1: // Process Document ID
+                    if(Text.isNumeric(curr))
+                        docId += curr;
+                    else
+                        location++;
+                    break;
+                default: // Process Token Frequency
+                    if(Text.isNumeric(curr)) {
+                        freq += curr;
+                    }else {
+                        location++;
+                        i += 10;
+                    }
+                    break;
+            }
+        }
+        return new int[]{Integer.parseInt(tokId), Integer.parseInt(docId), Integer.parseInt(freq)};
+    }
+
+    /**
+     * Loads all the Title files.
+     * @param titles Files holding the Tokens found in the
+     *               title of each Document.
+     */
+    private void loadTitles(List<File> titles){
+        // Function to process each line of the file and
+        // save data if it's a data line
+        Consumer<String> titleReader = (String line) -> {
+            if(isValidEntry(line)){
+                int comma = line.indexOf(',');
+                int tokId = Integer.parseInt(line.substring(1, comma));
+                int docId = Integer.parseInt(line.substring(comma + 1, line.indexOf(')', comma)));
+
+                Term term = idTokenMap.get(tokId);
+                if(term == null) {
+                    LOGGER.warn("Title found for an unknown Token. TokenID={},DocumentID={}", tokId, docId);
+                    return;
+                }
+                term.addTitleLink(docId);
+                titlesLoaded++;
+                LOGGER.trace("Loading Title. TokenID={},DocumentID={}", tokId, docId);
+            }
+        };
+
+        for(File titleFile : titles)
+            readDocument(titleFile, titleReader);
+    }
+
+    /**
+     * Loads all the Position files. Positions are kept compressed
+     * and on heap, even for Terms whose links are on disk.
+     * @param positions Files holding the positions of Tokens
+     *                  within Documents.
+     */
+    private void loadPositions(List<File> positions){
+        // Function to process each line of the file and
+        // save data if it's a data line
+        Consumer<String> positionReader = (String line) -> {
+            if(isValidEntry(line)){
+                int firstComma = line.indexOf(',');
+                int secondComma = line.indexOf(',', firstComma + 1);
+                int tokId = Integer.parseInt(line.substring(1, firstComma));
+                int docId = Integer.parseInt(line.substring(firstComma + 1, secondComma));
+                byte[] data = Positions.fromText(line.substring(secondComma + 2, line.indexOf('"', secondComma + 2)));
+
+                Term term = idTokenMap.get(tokId);
+                if(term == null) {
+                    LOGGER.warn("Positions found for an unknown Token. TokenID={},DocumentID={}", tokId, docId);
+                    return;
+                }
+                term.addPositions(docId, data);
+                positionBytesLoaded += data.length;
+                LOGGER.trace("Loading Positions. TokenID={},DocumentID={},Bytes={}", tokId, docId, data.length);
+            }
+        };
+
+        for(File posFile : positions)
+            readDocument(posFile, positionReader);
+    }
+
+    /**
+     * Decides which Terms keep their document links on heap when a
+     * {@value #MEMORY_BUDGET_PROP} is set. The Intersection files are
+     * scanned once to count the links of each Term, then Terms are kept
+     * on heap from the fewest links up until the budget is spent. The
+     * rest are moved to a {@link PostingsFile}, which the Intersections
+     * are then loaded straight into.
+     * @param dir Directory holding the Index.
+     * @param intersections Intersection files to count links in.
+     */
+    private void planPostings(File dir, List<File> intersections){
+        long budget = Long.parseLong(System.getProperty(MEMORY_BUDGET_PROP, "0")) * 1024 * 1024;
+        if(budget <= 0)
+            return;
+
+        // Count the links of each Term by its ID
+        int maxId = 0;
+        for(int id : idTokenMap.keySet())
+            maxId = Math.max(maxId, id);
+        int[] counts = new int[maxId + 1];
+        for(File interFile : intersections){
+            readDocument(interFile, (String line) -> {
+                if(isValidEntry(line)) {
+                    int id = parseIntersection(line)[0];
+                    if(id >= 0 && id < counts.length)
+                        counts[id]++;
+                }
+            });
+        }
+
+        // Smallest first, each sorts as one long of its count then ID
+        long[] bySize = new long[idTokenMap.size()];
+        int n = 0;
+        for(int id : idTokenMap.keySet())
+            bySize[n++] = ((long) counts[id] << 32) | id;
+        Arrays.sort(bySize);
+
+        long used = 0;
+        int kept = 0;
+        while(kept < n){
+            int id = (int) bySize[kept];
+            Term term = idTokenMap.get(id);
+            long size = term.estimateSize() + Term.estimatePostingsSize(counts[id]);
+            if(used + size > budget)
+                break;
+            used += size;
+            kept++;
+        }
+
+        if(kept == n) {
+            LOGGER.info("All postings fit the memory budget of {} MB.", budget / 1024 / 1024);
+            return;
+        }
+
+        long spilled = 0;
+        for(int i = kept; i < n; i++)
+            spilled += bySize[i] >>> 32;
+
+        File file = new File(System.getProperty(POSTINGS_FILE_PROP, new File(dir, "postings-spill.bin").getPath()));
+        try {
+            postingsFile = new PostingsFile(file, spilled);
+        }catch (IOException e){
+            LOGGER.atError().setCause(e).log("Failed to create postings file: {}. All postings are kept on heap.", file);
+            return;
+        }
+
+        long slot = 0;
+        for(int i = kept; i < n; i++){
+            int id = (int) bySize[i];
+            idTokenMap.get(id).spill(postingsFile, slot);
+            slot += counts[id];
+        }
+        LOGGER.warn("Postings exceed the memory budget of {} MB. Kept {} Tokens on heap, {} Tokens ({} postings) on disk: {}",
+                budget / 1024 / 1024, kept, n - kept, spilled, file);
+    }
+
     /**
      * Loads all Document Files.
      * @param documents Documents to load.
@@ -275,7 +659,9 @@ public class IndexLoader {
         Consumer<String> documentReader = (String line) -> {
             if(isValidEntry(line)){
                 String id = "";
+                String externalId = "";
                 String highFreqTerm = "";
+                String length = "";
                 String title = "";
                 String path = "";
 
@@ -290,15 +676,27 @@ public class IndexLoader {
                             else
                                 location++;
                             break;
-                        case 1: // Process highest Term Count in Document
-                            if(Text.isNumeric(curr)) {
+                        case 1: // Process External Document ID
+                            if(Text.isNumeric(curr))
+                                externalId += curr;
+                            else
+                                location++;
+                            break;
+                        case 2: // Process highest Term Count in Document
+                            if(Text.isNumeric(curr))
                                 highFreqTerm += curr;
+                            else
+                                location++;
+                            break;
+                        case 3: // Process Document Length
+                            if(Text.isNumeric(curr)) {
+                                length += curr;
                             }else {
                                 location++;
                                 i++;
                             }
                             break;
-                        case 2: // Process Document Title
+                        case 4: // Process Document Title
                             if(curr != '"') {
                                 title += curr;
                             }else{
@@ -315,9 +713,8 @@ public class IndexLoader {
                     }
                 }
 
-                int docId = Integer.parseInt(id);
-                idDocMap.put(docId, new Doc(docId, title, path, Integer.parseInt(highFreqTerm)));
-                LOGGER.trace("Loading Document. ID={},Title={},Path={},HighTermFreq={}", id, title, path, highFreqTerm);
+                docBuilder.add(Integer.parseInt(id), Integer.parseInt(externalId), title, path, Integer.parseInt(highFreqTerm), Integer.parseInt(length));
+                LOGGER.trace("Loading Document. ID={},ExternalID={},Title={},Path={},HighTermFreq={},Length={}", id, externalId, title, path, highFreqTerm, length);
             }
         };
 
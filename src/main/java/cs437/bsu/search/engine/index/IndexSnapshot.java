@@ -0,0 +1,319 @@
+package cs437.bsu.search.engine.index;
+
+import cs437.bsu.search.engine.suggestions.AOLMap;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import cs437.bsu.search.engine.util.TaskExecutor;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot of the fully loaded Index and AOL query suggestions. After the Index
+ * and query logs are loaded from their source files the loaded structures are
+ * written to a single binary file ending in a CRC32 checksum. On the next start
+ * if the snapshot is newer than every source file it's restored instead, which
+ * skips parsing the DML files and query logs. Snapshots aren't used while an
+ * {@value IndexLoader#MEMORY_BUDGET_PROP} is set.
+ * @author Cade Peterson
+ */
+public class IndexSnapshot {
+
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(IndexSnapshot.class);
+    private static final int MAGIC = 0x534E4150; // SNAP
+    private static final int VERSION = 6;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Property for the snapshot file. Defaults to a file in the Index directory. */
+    public static final String SNAPSHOT_FILE_PROP = "index.snapshot";
+    /** Property to enable or disable snapshots. */
+    public static final String SNAPSHOT_ENABLED_PROP = "index.snapshot.enabled";
+
+    private File indexDir;
+    private File snapshot;
+    private AOLMap aol;
+    private boolean enabled;
+    private CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    /**
+     * Creates the snapshot handler.
+     * @param indexDir Directory holding the Index.
+     * @param aol AOL query suggestions to load alongside the Index.
+     */
+    public IndexSnapshot(File indexDir, AOLMap aol){
+        this.indexDir = indexDir;
+        this.aol = aol;
+        this.snapshot = new File(System.getProperty(SNAPSHOT_FILE_PROP, new File(indexDir, "index-snapshot.bin").getPath()));
+        this.enabled = Boolean.parseBoolean(System.getProperty(SNAPSHOT_ENABLED_PROP, "true"));
+
+        // A snapshot restores every posting on heap, ignoring the memory budget
+        if(enabled && Long.parseLong(System.getProperty(IndexLoader.MEMORY_BUDGET_PROP, "0")) > 0) {
+            LOGGER.info("Snapshots are disabled while {} is set.", IndexLoader.MEMORY_BUDGET_PROP);
+            this.enabled = false;
+        }
+    }
+
+    /**
+     * Loads the Index and AOL query suggestions. If the snapshot is current it's
+     * restored, otherwise both are loaded from their source files at the same time
+     * and a new snapshot is written once both are done.
+     * @return Future that completes once the Index is loaded. The AOL query
+     * suggestions might still be loading, refer to {@link AOLMap#isReady()}.
+     */
+    public CompletableFuture<Void> load(){
+        if(!enabled || !isCurrent())
+            return loadSources(true);
+
+        CompletableFuture<Void> index = new CompletableFuture<>();
+        TaskExecutor.StartTask(() -> {
+            try{
+                restore(index);
+                finished.complete(null);
+            }catch (Exception e){
+                LOGGER.atError().setCause(e).log("Failed to restore snapshot: {}", snapshot);
+                if(!index.isDone()) {
+                    loadSources(true).whenComplete((Void v, Throwable t) -> {
+                        if(t == null)
+                            index.complete(null);
+                        else
+                            index.completeExceptionally(t);
+                    });
+                }else {
+                    loadAol().whenComplete((Void v, Throwable t) -> finished.complete(null));
+                }
+            }
+        }, () -> {});
+        return index;
+    }
+
+    /**
+     * Gets a future that completes once {@link #load()} has finished all of its
+     * work, the AOL query suggestions being loaded and any snapshot written. It
+     * completes even if either fails, failures being logged.
+     * @return Future that completes once loading has finished.
+     */
+    public CompletableFuture<Void> getFinished(){
+        return finished;
+    }
+
+    /**
+     * Dictates if the snapshot is newer than every Index and AOL query log file.
+     * @return true if the snapshot can be restored, otherwise false.
+     */
+    private boolean isCurrent(){
+        if(!snapshot.isFile())
+            return false;
+
+        List<File> sources = new ArrayList<>(Arrays.asList(IndexLoader.getIndexFiles(indexDir)));
+        sources.addAll(Arrays.asList(aol.getLogFiles()));
+        for(File f : sources){
+            if(f.lastModified() >= snapshot.lastModified()) {
+                LOGGER.info("Snapshot is older than: {}", f);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads the Index and AOL query suggestions from their source files.
+     * @param write True to write a snapshot once both are loaded.
+     * @return Future that completes once the Index is loaded.
+     */
+    private CompletableFuture<Void> loadSources(boolean write){
+        CompletableFuture<Void> index = IndexLoader.getInstance().loadIndex(indexDir);
+        CompletableFuture<Void> aolLoad = loadAol();
+
+        CompletableFuture<Void> loaded = CompletableFuture.allOf(index, aolLoad);
+        if(enabled && write) {
+            loaded = loaded.thenRunAsync(() -> {
+                try {
+                    write();
+                } catch (IOException e) {
+                    LOGGER.atError().setCause(e).log("Failed to write snapshot: {}", snapshot);
+                }
+            }, (Runnable r) -> TaskExecutor.StartTask(r, () -> {}));
+        }
+        loaded.whenComplete((Void v, Throwable t) -> finished.complete(null));
+        return index;
+    }
+
+    /**
+     * Loads the AOL query logs.
+     * @return Future that completes once loaded.
+     */
+    private CompletableFuture<Void> loadAol(){
+        return aol.runAsync().whenComplete((Void v, Throwable t) -> {
+            if(t != null)
+                LOGGER.atError().setCause(t).log("Failed to load AOL query logs. Suggestions are disabled.");
+            else
+                LOGGER.info("AOL query logs loaded. Suggestions are enabled.");
+        });
+    }
+
+    /**
+     * Writes the loaded Index and AOL query suggestions to the snapshot. The
+     * snapshot is written to a temporary file first and then moved in place.
+     * @throws IOException If writing fails.
+     */
+    private void write() throws IOException {
+        LOGGER.info("Writing snapshot: {}", snapshot);
+        long start = System.currentTimeMillis();
+        IndexLoader il = IndexLoader.getInstance();
+        File tmp = new File(snapshot.getPath() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try(DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE), crc))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            il.getDocStore().writeTo(out);
+
+            List<Term> terms = il.getTerms();
+            out.writeInt(terms.size());
+            for(Term term : terms){
+                out.writeUTF(term.getToken());
+                out.writeLong(term.getHashValue());
+
+                int[] docIds = term.getDocIds();
+                int[] freqs = term.getDocFrequencies();
+                ByteBuffer postings = ByteBuffer.allocate(docIds.length * 2 * Integer.BYTES);
+                for(int d = 0; d < docIds.length; d++)
+                    postings.putInt(docIds[d]).putInt(freqs[d]);
+
+                out.writeInt(docIds.length);
+                out.write(postings.array());
+
+                // Compressed positions, if recorded
+                int[] offsets = term.getPositionOffsets();
+                if(offsets == null) {
+                    out.writeInt(-1);
+                }else {
+                    byte[] data = term.getPositionData();
+                    ByteBuffer offsetBytes = ByteBuffer.allocate(offsets.length * Integer.BYTES);
+                    offsetBytes.asIntBuffer().put(offsets);
+                    out.writeInt(data.length);
+                    out.write(offsetBytes.array());
+                    out.write(data);
+                }
+
+                int[] titleDocIds = term.getTitleDocIds();
+                ByteBuffer titleBytes = ByteBuffer.allocate(titleDocIds.length * Integer.BYTES);
+                titleBytes.asIntBuffer().put(titleDocIds);
+                out.writeInt(titleDocIds.length);
+                out.write(titleBytes.array());
+            }
+
+            aol.writeTo(out);
+            out.writeLong(crc.getValue());
+        }
+
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("Snapshot written in {} ms. Size={} bytes", System.currentTimeMillis() - start, snapshot.length());
+    }
+
+    /**
+     * Restores the Index and then the AOL query suggestions from the snapshot.
+     * The checksum is verified before anything is restored.
+     * @param index Future to complete once the Index is restored.
+     * @throws IOException If the snapshot is invalid or fails to be read.
+     */
+    private void restore(CompletableFuture<Void> index) throws IOException {
+        LOGGER.info("Restoring snapshot: {}", snapshot);
+        long start = System.currentTimeMillis();
+        verify();
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), BUFFER_SIZE))){
+            if(in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unsupported snapshot format.");
+
+            DocStore docs = DocStore.readFrom(in);
+
+            int numTerms = in.readInt();
+            List<Term> terms = new ArrayList<>(numTerms);
+            byte[] postings = new byte[0];
+            for(int i = 0; i < numTerms; i++){
+                Term term = new Term(in.readUTF(), in.readLong());
+
+                // Postings are read in bulk
+                int numPostings = in.readInt();
+                int length = numPostings * 2 * Integer.BYTES;
+                if(postings.length < length)
+                    postings = new byte[length];
+                in.readFully(postings, 0, length);
+
+                ByteBuffer buffer = ByteBuffer.wrap(postings, 0, length);
+                for(int p = 0; p < numPostings; p++)
+                    term.addDocumentLink(buffer.getInt(), buffer.getInt());
+                term.finish();
+
+                int positionBytes = in.readInt();
+                if(positionBytes >= 0) {
+                    byte[] offsetBytes = new byte[(term.numberAssociatedDocs() + 1) * Integer.BYTES];
+                    in.readFully(offsetBytes);
+                    int[] offsets = new int[term.numberAssociatedDocs() + 1];
+                    ByteBuffer.wrap(offsetBytes).asIntBuffer().get(offsets);
+
+                    byte[] data = new byte[positionBytes];
+                    in.readFully(data);
+                    term.setPositions(offsets, data);
+                }
+
+                int[] titleDocIds = new int[in.readInt()];
+                byte[] titleBytes = new byte[titleDocIds.length * Integer.BYTES];
+                in.readFully(titleBytes);
+                ByteBuffer.wrap(titleBytes).asIntBuffer().get(titleDocIds);
+                term.setTitleDocIds(titleDocIds);
+                terms.add(term);
+            }
+
+            IndexLoader.getInstance().openSummaries(indexDir);
+            IndexLoader.getInstance().restore(docs, terms);
+            index.complete(null);
+            LOGGER.info("Index restored from snapshot in {} ms.", System.currentTimeMillis() - start);
+
+            aol.restore(in);
+            LOGGER.info("AOL query suggestions restored from snapshot. Suggestions are enabled.");
+        }
+    }
+
+    /**
+     * Verifies the checksum at the end of the snapshot.
+     * @throws IOException If the checksum doesn't match.
+     */
+    private void verify() throws IOException {
+        try(FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)){
+            long payload = channel.size() - Long.BYTES;
+            if(payload < 0)
+                throw new IOException("Snapshot is truncated.");
+
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long position = 0;
+            while(position < payload){
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), payload - position));
+                int read = channel.read(buffer, position);
+                if(read < 0)
+                    throw new IOException("Snapshot is truncated.");
+                position += read;
+                buffer.flip();
+                crc.update(buffer);
+            }
+
+            ByteBuffer expected = ByteBuffer.allocate(Long.BYTES);
+            while(expected.hasRemaining() && channel.read(expected, payload + expected.position()) >= 0);
+            expected.flip();
+            if(expected.remaining() != Long.BYTES || expected.getLong() != crc.getValue())
+                throw new IOException("Snapshot checksum doesn't match.");
+        }
+    }
+}
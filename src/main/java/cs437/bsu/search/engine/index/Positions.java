@@ -0,0 +1,83 @@
+package cs437.bsu.search.engine.index;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Compresses the positions of a Term within a Document. Positions are
+ * ascending so each is stored as the gap from the one before it, written
+ * as a variable length integer of 7 bits per byte. Most gaps fit in one
+ * or two bytes instead of four.
+ * @author Cade Peterson
+ */
+class Positions {
+
+    private Positions(){}
+
+    /**
+     * Compresses positions.
+     * @param positions Ascending positions.
+     * @return Compressed positions.
+     */
+    static byte[] encode(int[] positions){
+        byte[] bytes = new byte[5 * positions.length];
+        int size = 0;
+        int prev = 0;
+        for(int position : positions){
+            int gap = position - prev;
+            prev = position;
+            while((gap & ~0x7F) != 0){
+                bytes[size++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[size++] = (byte) gap;
+        }
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Decompresses positions.
+     * @param bytes Bytes holding compressed positions.
+     * @param start Start of the compressed positions.
+     * @param end End of the compressed positions, exclusive.
+     * @return Ascending positions.
+     */
+    static int[] decode(byte[] bytes, int start, int end){
+        int[] positions = new int[end - start];
+        int size = 0;
+        int prev = 0;
+        int i = start;
+        while(i < end){
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do{
+                b = bytes[i++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            }while(b < 0);
+
+            prev += gap;
+            positions[size++] = prev;
+        }
+        return Arrays.copyOf(positions, size);
+    }
+
+    /**
+     * Compresses positions into text that can be stored in a DML file.
+     * @param positions Ascending positions.
+     * @return Base64 text of the compressed positions.
+     */
+    static String toText(int[] positions){
+        return Base64.getEncoder().encodeToString(encode(positions));
+    }
+
+    /**
+     * Reads text written by {@link #toText(int[])}.
+     * @param text Base64 text of compressed positions.
+     * @return Compressed positions.
+     */
+    static byte[] fromText(String text){
+        return Base64.getDecoder().decode(text);
+    }
+}
@@ -0,0 +1,103 @@
+package cs437.bsu.search.engine.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Disk-backed store of postings that didn't fit in the Index memory budget. Each
+ * posting is a Document ID and frequency pair at a fixed slot of the file, a
+ * {@link Term} owning a run of consecutive slots. The file is memory mapped in
+ * segments so postings are read and written without system calls and kept out of
+ * the heap, the operating system paging them in and out as needed.
+ * @author Cade Peterson
+ */
+class PostingsFile {
+
+    private static final int POSTING_BYTES = 2 * Integer.BYTES;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private File file;
+    private MappedByteBuffer[] segments;
+    private long numPostings;
+
+    /**
+     * Creates the file with room for a number of postings. Any
+     * existing file is replaced and the file is deleted on exit.
+     * @param file File to store postings in.
+     * @param numPostings Number of postings to make room for.
+     * @throws IOException If the file fails to be created.
+     */
+    PostingsFile(File file, long numPostings) throws IOException {
+        this.file = file;
+        this.numPostings = numPostings;
+
+        long size = numPostings * POSTING_BYTES;
+        int numSegments = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[numSegments];
+
+        file.delete();
+        file.deleteOnExit();
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            for(int s = 0; s < numSegments; s++){
+                long start = (long) s << SEGMENT_SHIFT;
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+    }
+
+    /**
+     * Writes a posting.
+     * @param slot Slot of the posting.
+     * @param docId Document ID.
+     * @param freq Frequency of the term in the Document.
+     */
+    void put(long slot, int docId, int freq){
+        long offset = slot * POSTING_BYTES;
+        MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+        int position = (int) (offset & (SEGMENT_SIZE - 1));
+        segment.putInt(position, docId);
+        segment.putInt(position + Integer.BYTES, freq);
+    }
+
+    /**
+     * Reads the Document ID of a posting.
+     * @param slot Slot of the posting.
+     * @return Document ID.
+     */
+    int getDocId(long slot){
+        long offset = slot * POSTING_BYTES;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Reads the frequency of a posting.
+     * @param slot Slot of the posting.
+     * @return Frequency of the term in the Document.
+     */
+    int getFrequency(long slot){
+        long offset = slot * POSTING_BYTES + Integer.BYTES;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Gets the size of the file.
+     * @return Bytes.
+     */
+    long getSize(){
+        return numPostings * POSTING_BYTES;
+    }
+
+    /**
+     * Gets the file postings are stored in.
+     * @return Postings file.
+     */
+    File getFile(){
+        return file;
+    }
+}
@@ -0,0 +1,193 @@
+package cs437.bsu.search.engine.index;
+
+import cs437.bsu.search.engine.container.IntList;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Corrects query tokens missing from the Index to the closest Term in its
+ * vocabulary. Candidates are found by symmetric delete: every string made by
+ * deleting up to {@value #DISTANCE_PROP} characters from the start of each Term
+ * is hashed ahead of time, so a token only needs its own deletes hashed and
+ * looked up to find each Term within that edit distance. Only the first
+ * {@value #PREFIX_LENGTH} characters are used which bounds the deletes per
+ * word, the edit distance of each candidate being checked over the whole word.
+ * <p>
+ * The delete hashes and Term IDs are packed into one sorted array of longs
+ * so the lookup is a binary search per delete. Of the candidates within the
+ * distance the closest is chosen, then the one found in the most Documents.
+ * @author Cade Peterson
+ */
+public class SpellingCorrector {
+
+    /** Property for the max edit distance of a correction, 0 to not correct tokens. */
+    public static final String DISTANCE_PROP = "query.spelling.distance";
+
+    /** Characters of a word deletes are made from. */
+    private static final int PREFIX_LENGTH = 7;
+
+    /** Shortest token that is corrected. Shorter tokens have too many close Terms. */
+    private static final int MIN_LENGTH = 4;
+
+    private Term[] terms;
+    private long[] deletes;
+    private int maxDistance;
+
+    /**
+     * Hashes the deletes of every Term.
+     * @param terms Terms of the Index, indexed by ID.
+     * @param maxDistance Max edit distance of a correction, 1 or 2.
+     */
+    SpellingCorrector(Term[] terms, int maxDistance){
+        this.terms = terms;
+        this.maxDistance = maxDistance;
+
+        long[] entries = new long[Math.max(16, terms.length * (PREFIX_LENGTH + 1))];
+        int size = 0;
+        for(int id = 0; id < terms.length; id++){
+            IntList hashes = new IntList();
+            String token = terms[id].getToken();
+            addDeletes(token.substring(0, Math.min(token.length(), PREFIX_LENGTH)).toCharArray(), maxDistance, hashes::add);
+
+            if(entries.length - size < hashes.size())
+                entries = Arrays.copyOf(entries, Math.max(entries.length * 2, size + hashes.size()));
+            for(int i = 0; i < hashes.size(); i++)
+                entries[size++] = ((long) hashes.get(i) << 32) | id;
+        }
+
+        // Sorted with repeats removed, a delete being made more than once per Term
+        Arrays.sort(entries, 0, size);
+        int unique = 0;
+        for(int i = 0; i < size; i++){
+            if(unique == 0 || entries[unique - 1] != entries[i])
+                entries[unique++] = entries[i];
+        }
+        deletes = Arrays.copyOf(entries, unique);
+    }
+
+    /**
+     * Finds the closest Term to a token missing from the Index.
+     * @param token Token to correct.
+     * @return Closest Term or null if none is within the max edit distance.
+     */
+    public Term correct(String token){
+        if(token.length() < MIN_LENGTH)
+            return null;
+
+        IntList hashes = new IntList();
+        addDeletes(token.substring(0, Math.min(token.length(), PREFIX_LENGTH)).toCharArray(), maxDistance, hashes::add);
+
+        Set<Integer> checked = new HashSet<>();
+        Term best = null;
+        int bestDistance = maxDistance + 1;
+        for(int h = 0; h < hashes.size(); h++){
+            long key = (long) hashes.get(h) << 32;
+            int at = Arrays.binarySearch(deletes, key);
+            for(int i = at < 0 ? -at - 1 : at; i < deletes.length && (deletes[i] & 0xFFFFFFFF00000000L) == key; i++){
+                int id = (int) deletes[i];
+                if(!checked.add(id))
+                    continue;
+
+                Term candidate = terms[id];
+                int distance = distance(token, candidate.getToken(), maxDistance);
+                if(distance < bestDistance || (distance == bestDistance && best != null && candidate.numberAssociatedDocs() > best.numberAssociatedDocs())) {
+                    best = candidate;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the max edit distance of a correction.
+     * @return Max edit distance.
+     */
+    public int getMaxDistance(){
+        return maxDistance;
+    }
+
+    /**
+     * Estimates the heap memory used by the delete hashes.
+     * @return Bytes used.
+     */
+    public long estimateSize(){
+        return 16 + 8L * deletes.length;
+    }
+
+    /**
+     * Hashes a word and each word made by deleting up to a number of its characters.
+     * A word made more than one way is hashed more than once.
+     * @param word Word to delete characters from.
+     * @param distance Characters left to delete.
+     * @param hashes Receives the hash of each word made.
+     */
+    private static void addDeletes(char[] word, int distance, IntConsumer hashes){
+        hashes.accept(hash(word));
+        if(distance == 0 || word.length <= 1)
+            return;
+
+        char[] shorter = new char[word.length - 1];
+        for(int i = 0; i < word.length; i++){
+            System.arraycopy(word, 0, shorter, 0, i);
+            System.arraycopy(word, i + 1, shorter, i, word.length - i - 1);
+            addDeletes(shorter, distance - 1, hashes);
+        }
+    }
+
+    /**
+     * FNV-1a hash over the characters of a word.
+     * @param word Word to hash.
+     * @return Hash value.
+     */
+    private static int hash(char[] word){
+        int h = 0x811C9DC5;
+        for(char c : word){
+            h ^= c;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Edit distance between two words where swapping two neighboring
+     * characters counts as one edit. Stops early once over the max.
+     * @param a First word.
+     * @param b Second word.
+     * @param max Max distance of interest.
+     * @return Edit distance or max + 1 if over the max.
+     */
+    static int distance(String a, String b, int max){
+        if(Math.abs(a.length() - b.length()) > max)
+            return max + 1;
+
+        int[] twoBack = new int[b.length() + 1];
+        int[] prev = new int[b.length() + 1];
+        int[] curr = new int[b.length() + 1];
+        for(int j = 0; j <= b.length(); j++)
+            prev[j] = j;
+
+        for(int i = 1; i <= a.length(); i++){
+            curr[0] = i;
+            int rowMin = i;
+            for(int j = 1; j <= b.length(); j++){
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(prev[j] + 1, curr[j - 1] + 1), prev[j - 1] + cost);
+                if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                    curr[j] = Math.min(curr[j], twoBack[j - 2] + 1);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if(rowMin > max)
+                return max + 1;
+
+            int[] spare = twoBack;
+            twoBack = prev;
+            prev = curr;
+            curr = spare;
+        }
+        return Math.min(prev[b.length()], max + 1);
+    }
+}
@@ -0,0 +1,311 @@
+package cs437.bsu.search.engine.index;
+
+import cs437.bsu.search.engine.container.IntList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Store of the text of each Document, saved when the Index is created so snippets
+ * are made without opening the corpus files. Each summary is the first part of the
+ * Document body with one sentence per line.
+ * <p>
+ * Summaries are packed into blocks of about {@value #BLOCK_SIZE} bytes, each block
+ * compressed on its own so a summary is read by inflating only its block. The file
+ * ends with an offset table locating each block and each summary within its block.
+ * The file is memory mapped in segments and only the offset table is kept on heap.
+ * @author Cade Peterson
+ */
+public class SummaryStore {
+
+    /** Name of the file summaries are stored in. */
+    public static final String FILE_NAME = "doc-summaries.bin";
+
+    /** Uncompressed size at which a block is closed. */
+    private static final int BLOCK_SIZE = 1 << 14;
+
+    private static final int MAGIC = 0x53554D53;
+    private static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private MappedByteBuffer[] segments;
+    private long[] blockOffsets;
+    private int[] blockLengths;
+    private int[] blockRawLengths;
+    private int[] docBlocks;
+    private int[] docOffsets;
+    private int[] docLengths;
+
+    private SummaryStore(){}
+
+    /**
+     * Opens a store written by a {@link Writer}.
+     * @param file File holding the summaries.
+     * @return Opened store.
+     * @throws IOException If the file fails to be read or isn't a summary file.
+     */
+    public static SummaryStore open(File file) throws IOException {
+        SummaryStore store = new SummaryStore();
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")){
+            long size = raf.length();
+            if(size < FOOTER_BYTES)
+                throw new IOException("Not a summary file: " + file);
+
+            FileChannel channel = raf.getChannel();
+            int numSegments = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            store.segments = new MappedByteBuffer[numSegments];
+            for(int s = 0; s < numSegments; s++){
+                long start = (long) s << SEGMENT_SHIFT;
+                store.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+
+            ByteBuffer footer = ByteBuffer.wrap(store.read(size - FOOTER_BYTES, FOOTER_BYTES));
+            long tableOffset = footer.getLong();
+            if(footer.getInt() != MAGIC || tableOffset < 0 || tableOffset > size - FOOTER_BYTES)
+                throw new IOException("Not a summary file: " + file);
+
+            ByteBuffer table = ByteBuffer.wrap(store.read(tableOffset, (int) (size - FOOTER_BYTES - tableOffset)));
+            int numBlocks = table.getInt();
+            store.blockOffsets = new long[numBlocks];
+            store.blockLengths = new int[numBlocks];
+            store.blockRawLengths = new int[numBlocks];
+            for(int b = 0; b < numBlocks; b++){
+                store.blockOffsets[b] = table.getLong();
+                store.blockLengths[b] = table.getInt();
+                store.blockRawLengths[b] = table.getInt();
+            }
+
+            int capacity = table.getInt();
+            store.docBlocks = new int[capacity];
+            store.docOffsets = new int[capacity];
+            store.docLengths = new int[capacity];
+            for(int d = 0; d < capacity; d++){
+                store.docBlocks[d] = table.getInt();
+                store.docOffsets[d] = table.getInt();
+                store.docLengths[d] = table.getInt();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Gets the summary of a Document.
+     * @param ordinal Ordinal of the Document.
+     * @return Sentences of the Document, one per line, or null if it has no summary.
+     * @throws IOException If the block holding the summary is corrupt.
+     */
+    public String getSummary(int ordinal) throws IOException {
+        if(ordinal < 0 || ordinal >= docBlocks.length || docBlocks[ordinal] < 0)
+            return null;
+
+        int block = docBlocks[ordinal];
+        byte[] raw = new byte[blockRawLengths[block]];
+        Inflater inflater = new Inflater();
+        try{
+            inflater.setInput(read(blockOffsets[block], blockLengths[block]));
+            int inflated = 0;
+            while(inflated < raw.length && !inflater.finished())
+                inflated += inflater.inflate(raw, inflated, raw.length - inflated);
+            if(inflated < raw.length)
+                throw new IOException("Summary block is truncated: " + block);
+        }catch (DataFormatException e){
+            throw new IOException("Summary block is corrupt: " + block, e);
+        }finally {
+            inflater.end();
+        }
+        return new String(raw, docOffsets[ordinal], docLengths[ordinal], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the size of the file the store was opened from.
+     * @return Bytes.
+     */
+    public long getSize(){
+        long size = 0;
+        for(MappedByteBuffer segment : segments)
+            size += segment.capacity();
+        return size;
+    }
+
+    /**
+     * Gets the heap held by the offset table.
+     * @return Bytes.
+     */
+    public long getHeapBytes(){
+        return (long) blockOffsets.length * (Long.BYTES + 2 * Integer.BYTES) + 3L * docBlocks.length * Integer.BYTES;
+    }
+
+    /**
+     * Copies bytes out of the mapped file. The bytes may span segments.
+     * @param offset Offset in the file.
+     * @param length Number of bytes.
+     * @return Bytes read.
+     */
+    private byte[] read(long offset, int length){
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while(copied < length){
+            long at = offset + copied;
+            ByteBuffer segment = segments[(int) (at >>> SEGMENT_SHIFT)].duplicate();
+            segment.position((int) (at & (SEGMENT_SIZE - 1)));
+            int n = Math.min(length - copied, segment.remaining());
+            segment.get(bytes, copied, n);
+            copied += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes summaries as Documents are saved. Summaries may be added
+     * in any order of ordinal. The offset table is written once closed.
+     */
+    public static class Writer {
+
+        private DataOutputStream out;
+        private Deflater deflater;
+        private long written;
+
+        private byte[] block;
+        private int blockSize;
+        private IntList blockOrdinals;
+
+        private long[] blockOffsets;
+        private IntList blockLengths;
+        private IntList blockRawLengths;
+        private int[] docBlocks;
+        private int[] docOffsets;
+        private int[] docLengths;
+
+        /**
+         * Creates the file, replacing any existing one.
+         * @param file File to store summaries in.
+         * @throws IOException If the file fails to be created.
+         */
+        public Writer(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            block = new byte[BLOCK_SIZE];
+            blockOrdinals = new IntList();
+            blockLengths = new IntList();
+            blockRawLengths = new IntList();
+            blockOffsets = new long[1 << 6];
+            docBlocks = new int[1 << 10];
+            docOffsets = new int[docBlocks.length];
+            docLengths = new int[docBlocks.length];
+            Arrays.fill(docBlocks, -1);
+        }
+
+        /**
+         * Adds the summary of a Document.
+         * @param ordinal Ordinal of the Document.
+         * @param summary Sentences of the Document, one per line.
+         * @throws IOException If a full block fails to be written.
+         */
+        public synchronized void add(int ordinal, String summary) throws IOException {
+            byte[] bytes = summary.getBytes(StandardCharsets.UTF_8);
+            if(blockSize > 0 && blockSize + bytes.length > BLOCK_SIZE)
+                flushBlock();
+            if(block.length < blockSize + bytes.length)
+                block = Arrays.copyOf(block, blockSize + bytes.length);
+
+            if(ordinal >= docBlocks.length){
+                int oldCapacity = docBlocks.length;
+                int capacity = Math.max(oldCapacity * 2, ordinal + 1);
+                docBlocks = Arrays.copyOf(docBlocks, capacity);
+                docOffsets = Arrays.copyOf(docOffsets, capacity);
+                docLengths = Arrays.copyOf(docLengths, capacity);
+                Arrays.fill(docBlocks, oldCapacity, capacity, -1);
+            }
+
+            System.arraycopy(bytes, 0, block, blockSize, bytes.length);
+            blockOrdinals.add(ordinal);
+            docOffsets[ordinal] = blockSize;
+            docLengths[ordinal] = bytes.length;
+            blockSize += bytes.length;
+        }
+
+        /**
+         * Compresses and writes the current block.
+         * @throws IOException If the block fails to be written.
+         */
+        private void flushBlock() throws IOException {
+            if(blockSize == 0)
+                return;
+
+            byte[] compressed = new byte[Math.max(64, blockSize + blockSize / 8 + 64)];
+            deflater.reset();
+            deflater.setInput(block, 0, blockSize);
+            deflater.finish();
+            int length = 0;
+            while(!deflater.finished()){
+                if(length == compressed.length)
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+
+            int blockId = blockLengths.size();
+            for(int i = 0; i < blockOrdinals.size(); i++)
+                docBlocks[blockOrdinals.get(i)] = blockId;
+
+            if(blockId == blockOffsets.length)
+                blockOffsets = Arrays.copyOf(blockOffsets, blockId * 2);
+            blockOffsets[blockId] = written;
+            blockLengths.add(length);
+            blockRawLengths.add(blockSize);
+            out.write(compressed, 0, length);
+            written += length;
+
+            blockOrdinals = new IntList();
+            blockSize = 0;
+            if(block.length > BLOCK_SIZE)
+                block = new byte[BLOCK_SIZE];
+        }
+
+        /**
+         * Writes the last block and the offset table then closes the file.
+         * @throws IOException If the file fails to be written.
+         */
+        public synchronized void close() throws IOException {
+            if(out == null)
+                return;
+
+            flushBlock();
+            long tableOffset = written;
+            out.writeInt(blockLengths.size());
+            for(int b = 0; b < blockLengths.size(); b++){
+                out.writeLong(blockOffsets[b]);
+                out.writeInt(blockLengths.get(b));
+                out.writeInt(blockRawLengths.get(b));
+            }
+
+            int capacity = docBlocks.length;
+            while(capacity > 0 && docBlocks[capacity - 1] < 0)
+                capacity--;
+            out.writeInt(capacity);
+            for(int d = 0; d < capacity; d++){
+                out.writeInt(docBlocks[d]);
+                out.writeInt(docOffsets[d]);
+                out.writeInt(docLengths[d]);
+            }
+
+            out.writeLong(tableOffset);
+            out.writeInt(MAGIC);
+            out.close();
+            deflater.end();
+            out = null;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package cs437.bsu.search.engine.index;
 
-import java.util.Set;
-import java.util.HashMap;
-import java.util.Map;
+import cs437.bsu.search.engine.container.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Represents a Term during the Search Engine Phase.
@@ -12,9 +15,29 @@ import java.util.Map;
  */
 public class Term implements Comparable<Term> {
 
+    /** Postings in the first impact tier. */
+    private static final int FIRST_TIER_SIZE = 64;
+    /** Each impact tier holds this many times the postings of the one before. */
+    private static final int TIER_GROWTH = 4;
+    private static final int[] NO_DOCS = new int[0];
+
     private String token;
     private long hashValue;
-    private Map<Integer, Integer> docFrequencies;
+    private int[] docIds;
+    private int[] docFrequencies;
+    private int numDocs;
+    private PostingsFile postingsFile;
+    private long spillStart;
+    private int[] positionOffsets;
+    private byte[] positionData;
+    private IntList pendingPositionDocs;
+    private List<byte[]> pendingPositions;
+    private int[] impactDocIds;
+    private int[] tierEnds;
+    private float[] tierImpacts;
+    private int[] tierFrequencies;
+    private int[] titleDocIds;
+    private IntList pendingTitleDocs;
 
     /**
      * Creates a Term.
@@ -24,16 +47,374 @@ public class Term implements Comparable<Term> {
     public Term(String token, long hashValue){
         this.token = token;
         this.hashValue = hashValue;
-        docFrequencies = new HashMap<>();
+        docIds = new int[4];
+        docFrequencies = new int[4];
+        numDocs = 0;
+        titleDocIds = NO_DOCS;
     }
 
     /**
      * Adds a Link to the documents in which this term is found.
+     * Once all links are added {@link #finish()} must be invoked.
      * @param docId Document found in.
      * @param freq Frequency this token is found within document.
      */
     public void addDocumentLink(int docId, int freq){
-        docFrequencies.put(docId, freq);
+        if(postingsFile != null){
+            postingsFile.put(spillStart + numDocs++, docId, freq);
+            return;
+        }
+
+        if(numDocs == docIds.length){
+            docIds = Arrays.copyOf(docIds, numDocs * 2);
+            docFrequencies = Arrays.copyOf(docFrequencies, numDocs * 2);
+        }
+        docIds[numDocs] = docId;
+        docFrequencies[numDocs] = freq;
+        numDocs++;
+    }
+
+    /**
+     * Adds a Link to a document this term is found in the title of.
+     * Once all links are added {@link #finish()} must be invoked.
+     * @param docId Document found in the title of.
+     */
+    void addTitleLink(int docId){
+        if(pendingTitleDocs == null)
+            pendingTitleDocs = new IntList(4);
+        pendingTitleDocs.add(docId);
+    }
+
+    /**
+     * Adds the compressed positions of this Term within a document. The
+     * document must also be linked through {@link #addDocumentLink(int, int)}
+     * before {@link #finish()} is invoked.
+     * @param docId Document found in.
+     * @param positions Positions compressed by {@link Positions#encode(int[])}.
+     */
+    void addPositions(int docId, byte[] positions){
+        if(pendingPositions == null){
+            pendingPositionDocs = new IntList(4);
+            pendingPositions = new ArrayList<>(4);
+        }
+        pendingPositionDocs.add(docId);
+        pendingPositions.add(positions);
+    }
+
+    /**
+     * Moves the document links of this Term to a {@link PostingsFile}. Must be
+     * invoked before any links are added, all further links being written to
+     * the file.
+     * @param file File to keep the links in.
+     * @param start First slot of the file owned by this Term.
+     */
+    void spill(PostingsFile file, long start){
+        postingsFile = file;
+        spillStart = start;
+        docIds = null;
+        docFrequencies = null;
+    }
+
+    /**
+     * Dictates if the document links of this Term are kept on disk.
+     * @return true if on disk, otherwise false.
+     */
+    public boolean isOnDisk(){
+        return postingsFile != null;
+    }
+
+    /**
+     * Trims the document links and orders them by document ID.
+     * If a document was linked more than once the last link is kept.
+     * Any positions added are then placed in the same order.
+     */
+    void finish(){
+        boolean sorted = true;
+        for(int i = 1; i < numDocs && sorted; i++)
+            sorted = docIdAt(i - 1) < docIdAt(i);
+
+        if(postingsFile != null){
+            if(!sorted){
+                // Sorted on heap one Term at a time then written back
+                docIds = getDocIds();
+                docFrequencies = getDocFrequencies();
+                sortLinks();
+                for(int i = 0; i < numDocs; i++)
+                    postingsFile.put(spillStart + i, docIds[i], docFrequencies[i]);
+                docIds = null;
+                docFrequencies = null;
+            }
+        }else {
+            if(!sorted)
+                sortLinks();
+
+            docIds = Arrays.copyOf(docIds, numDocs);
+            docFrequencies = Arrays.copyOf(docFrequencies, numDocs);
+        }
+        finishPositions();
+
+        if(pendingTitleDocs != null) {
+            int[] ids = pendingTitleDocs.toArray();
+            Arrays.sort(ids);
+            int n = 0;
+            for(int i = 0; i < ids.length; i++){
+                if(n == 0 || ids[n - 1] != ids[i])
+                    ids[n++] = ids[i];
+            }
+            titleDocIds = Arrays.copyOf(ids, n);
+            pendingTitleDocs = null;
+        }
+    }
+
+    /**
+     * Sets the documents this Term is found in the title of once finished.
+     * @param ids Sorted Document IDs.
+     */
+    void setTitleDocIds(int[] ids){
+        titleDocIds = ids.length == 0 ? NO_DOCS : ids;
+    }
+
+    /**
+     * Gets the Document IDs this Term is found in the title of.
+     * The array is sorted and must not be modified.
+     * @return Sorted Document IDs, empty if none.
+     */
+    public int[] getTitleDocIds(){
+        return titleDocIds;
+    }
+
+    /**
+     * Dictates if this Term is found in the title of a document.
+     * @param docId ID of the document.
+     * @return true if found in the title, otherwise false.
+     */
+    public boolean isInTitle(int docId){
+        return titleDocIds.length > 0 && Arrays.binarySearch(titleDocIds, docId) >= 0;
+    }
+
+    /**
+     * Packs the positions added into one array in the order of the
+     * document links. Positions of documents not linked are dropped.
+     */
+    private void finishPositions(){
+        if(pendingPositions == null)
+            return;
+
+        byte[][] byLink = new byte[numDocs][];
+        int size = 0;
+        for(int p = 0; p < pendingPositions.size(); p++){
+            int i = indexOf(pendingPositionDocs.get(p));
+            if(i < 0)
+                continue;
+            if(byLink[i] != null)
+                size -= byLink[i].length;
+            byLink[i] = pendingPositions.get(p);
+            size += byLink[i].length;
+        }
+
+        int[] offsets = new int[numDocs + 1];
+        byte[] data = new byte[size];
+        int offset = 0;
+        for(int i = 0; i < numDocs; i++){
+            offsets[i] = offset;
+            if(byLink[i] != null) {
+                System.arraycopy(byLink[i], 0, data, offset, byLink[i].length);
+                offset += byLink[i].length;
+            }
+        }
+        offsets[numDocs] = offset;
+
+        setPositions(offsets, data);
+        pendingPositionDocs = null;
+        pendingPositions = null;
+    }
+
+    /**
+     * Sets the compressed positions of this Term once finished.
+     * @param offsets Start of the positions of each document link, with one extra end offset.
+     * @param data Compressed positions of all document links.
+     */
+    void setPositions(int[] offsets, byte[] data){
+        positionOffsets = offsets;
+        positionData = data;
+    }
+
+    /**
+     * Gets the start of the positions of each document link.
+     * @return Offsets into {@link #getPositionData()} or null if no positions.
+     */
+    int[] getPositionOffsets(){
+        return positionOffsets;
+    }
+
+    /**
+     * Gets the compressed positions of all document links.
+     * @return Compressed positions or null if no positions.
+     */
+    byte[] getPositionData(){
+        return positionData;
+    }
+
+    /** Orders the document links on heap by document ID, dropping duplicates. */
+    private void sortLinks(){
+        // Document IDs are never negative so each link sorts as one long
+        long[] links = new long[numDocs];
+        for(int i = 0; i < numDocs; i++)
+            links[i] = ((long) docIds[i] << 32) | i;
+        Arrays.sort(links);
+
+        int[] ids = new int[numDocs];
+        int[] freqs = new int[numDocs];
+        int n = 0;
+        for(int i = 0; i < links.length; i++){
+            int id = (int) (links[i] >>> 32);
+            int freq = docFrequencies[(int) links[i]];
+            if(n > 0 && ids[n - 1] == id)
+                n--;
+            ids[n] = id;
+            freqs[n++] = freq;
+        }
+        docIds = ids;
+        docFrequencies = freqs;
+        numDocs = n;
+    }
+
+    /**
+     * Gets the document ID of a link.
+     * @param i Index of the link.
+     * @return Document ID.
+     */
+    private int docIdAt(int i){
+        return postingsFile != null ? postingsFile.getDocId(spillStart + i) : docIds[i];
+    }
+
+    /**
+     * Finds the document link of a document.
+     * @param docId ID of the document.
+     * @return Index of the link or a negative value if not linked.
+     */
+    private int indexOf(int docId){
+        if(postingsFile == null)
+            return Arrays.binarySearch(docIds, 0, numDocs, docId);
+
+        int lo = 0;
+        int hi = numDocs - 1;
+        while(lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            int midId = docIdAt(mid);
+            if(midId < docId)
+                lo = mid + 1;
+            else if(midId > docId)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Orders a copy of the Document IDs by impact, the term frequency normalized
+     * by the highest token frequency of the document, highest first. The ordered
+     * IDs are split into tiers, the first holding {@value #FIRST_TIER_SIZE} and
+     * each next one {@value #TIER_GROWTH} times more, so the most frequent terms
+     * can stop being scanned after their highest impact tiers. The highest impact
+     * and term frequency of each tier are kept for bounding the score of a tier.
+     * Terms kept on disk or with a single tier are left as is.
+     * @param highestTokenFreq Gives the highest token frequency of a document.
+     */
+    void orderByImpact(IntUnaryOperator highestTokenFreq){
+        if(postingsFile != null || numDocs <= FIRST_TIER_SIZE)
+            return;
+
+        // Impacts are positive so their float bits sort the same as they do
+        long[] impacts = new long[numDocs];
+        for(int i = 0; i < numDocs; i++){
+            float impact = docFrequencies[i] / (float) Math.max(1, highestTokenFreq.applyAsInt(docIds[i]));
+            impacts[i] = ((long) Float.floatToIntBits(impact) << 32) | i;
+        }
+        Arrays.sort(impacts);
+
+        impactDocIds = new int[numDocs];
+        for(int i = 0; i < numDocs; i++)
+            impactDocIds[i] = docIds[(int) impacts[numDocs - 1 - i]];
+
+        IntList ends = new IntList(8);
+        for(long end = FIRST_TIER_SIZE; end < numDocs; end *= TIER_GROWTH)
+            ends.add((int) end);
+        ends.add(numDocs);
+        tierEnds = ends.toArray();
+
+        tierImpacts = new float[tierEnds.length];
+        tierFrequencies = new int[tierEnds.length];
+        for(int tier = 0, i = 0; tier < tierEnds.length; tier++){
+            tierImpacts[tier] = Float.intBitsToFloat((int) (impacts[numDocs - 1 - i] >>> 32));
+            for(; i < tierEnds[tier]; i++)
+                tierFrequencies[tier] = Math.max(tierFrequencies[tier], docFrequencies[(int) impacts[numDocs - 1 - i]]);
+        }
+    }
+
+    /**
+     * Dictates if the Document IDs of this Term are split into impact tiers.
+     * @return true if impact ordered, otherwise false.
+     * @see #orderByImpact(IntUnaryOperator)
+     */
+    public boolean isImpactOrdered(){
+        return impactDocIds != null;
+    }
+
+    /**
+     * Gets the Document IDs ordered by impact, highest first. If the Term
+     * isn't impact ordered these are the Document IDs in ID order as one tier.
+     * The array must not be modified.
+     * @return Document IDs by impact.
+     */
+    public int[] getImpactDocIds(){
+        return impactDocIds == null ? getDocIds() : impactDocIds;
+    }
+
+    /**
+     * Gets the number of impact tiers.
+     * @return Tier count, 1 if not impact ordered.
+     */
+    public int getNumTiers(){
+        return tierEnds == null ? 1 : tierEnds.length;
+    }
+
+    /**
+     * Gets the start of a tier within {@link #getImpactDocIds()}.
+     * @param tier Index of the tier.
+     * @return Start of the tier.
+     */
+    public int getTierStart(int tier){
+        return tier == 0 ? 0 : tierEnds[tier - 1];
+    }
+
+    /**
+     * Gets the end of a tier within {@link #getImpactDocIds()}.
+     * @param tier Index of the tier.
+     * @return End of the tier, exclusive.
+     */
+    public int getTierEnd(int tier){
+        return tierEnds == null ? numDocs : tierEnds[tier];
+    }
+
+    /**
+     * Gets the highest impact of a tier, the term frequency normalized by
+     * the highest token frequency of the document.
+     * @param tier Index of the tier.
+     * @return Highest impact, 1 if not impact ordered.
+     */
+    public float getTierImpact(int tier){
+        return tierImpacts == null ? 1 : tierImpacts[tier];
+    }
+
+    /**
+     * Gets the highest term frequency of a tier.
+     * @param tier Index of the tier.
+     * @return Highest frequency, {@link Integer#MAX_VALUE} if not impact ordered.
+     */
+    public int getTierFrequency(int tier){
+        return tierFrequencies == null ? Integer.MAX_VALUE : tierFrequencies[tier];
     }
 
     /**
@@ -53,12 +434,34 @@ public class Term implements Comparable<Term> {
     }
 
     /**
-     * Gets a Set of Documents IDs
-     * this Term is associated to.
-     * @return Set of Document IDs this term is related to.
+     * Gets the Documents IDs this Term is associated to.
+     * The array is sorted and must not be modified. If the
+     * links are kept on disk they're read on every call.
+     * @return Sorted Document IDs this term is related to.
      */
-    public Set<Integer> getDocs(){
-        return docFrequencies.keySet();
+    public int[] getDocIds(){
+        if(postingsFile == null)
+            return docIds;
+
+        int[] ids = new int[numDocs];
+        for(int i = 0; i < numDocs; i++)
+            ids[i] = postingsFile.getDocId(spillStart + i);
+        return ids;
+    }
+
+    /**
+     * Gets the frequencies of this Term within each document,
+     * in the same order as {@link #getDocIds()}.
+     * @return Term frequency per document.
+     */
+    int[] getDocFrequencies(){
+        if(postingsFile == null)
+            return docFrequencies;
+
+        int[] freqs = new int[numDocs];
+        for(int i = 0; i < numDocs; i++)
+            freqs[i] = postingsFile.getFrequency(spillStart + i);
+        return freqs;
     }
 
     /**
@@ -67,7 +470,7 @@ public class Term implements Comparable<Term> {
      * @return Number of documents this term is found in.
      */
     public int numberAssociatedDocs(){
-        return docFrequencies.size();
+        return numDocs;
     }
 
     /**
@@ -77,10 +480,70 @@ public class Term implements Comparable<Term> {
      * @return Term frequency in document. 0-n
      */
     public int getDocFrequency(Doc doc){
-        Integer freq = docFrequencies.get(doc.getId());
-        if(freq == null)
+        return getDocFrequency(doc.getId());
+    }
+
+    /**
+     * Gets the frequency of this term within a document.
+     * @param docId ID of the document.
+     * @return Term frequency in document. 0-n
+     */
+    public int getDocFrequency(int docId){
+        int i = indexOf(docId);
+        if(i < 0)
             return 0;
-        return freq;
+        return postingsFile != null ? postingsFile.getFrequency(spillStart + i) : docFrequencies[i];
+    }
+
+    /**
+     * Dictates if the positions of this Term within
+     * each document were recorded in the Index.
+     * @return true if positions are known, otherwise false.
+     */
+    public boolean hasPositions(){
+        return positionOffsets != null;
+    }
+
+    /**
+     * Gets the positions of this term within a document.
+     * They're decompressed on every call.
+     * @param docId ID of the document.
+     * @return Ascending positions or null if not known for the document.
+     */
+    public int[] getPositions(int docId){
+        if(positionOffsets == null)
+            return null;
+
+        int i = indexOf(docId);
+        if(i < 0)
+            return null;
+        return Positions.decode(positionData, positionOffsets[i], positionOffsets[i + 1]);
+    }
+
+    /**
+     * Estimates the heap memory used by this Term, its String and its postings.
+     * @return Bytes used.
+     */
+    public long estimateSize(){
+        long size = 56 + (40 + token.length());
+        if(postingsFile == null)
+            size += 2 * (16 + 4L * docIds.length);
+        if(positionOffsets != null)
+            size += 2 * 16 + 4L * positionOffsets.length + positionData.length;
+        if(impactDocIds != null)
+            size += 4 * 16 + 4L * (impactDocIds.length + 3 * tierEnds.length);
+        if(titleDocIds != NO_DOCS)
+            size += 16 + 4L * titleDocIds.length;
+        return size;
+    }
+
+    /**
+     * Estimates the heap memory the document links of a Term take up.
+     * @param numLinks Number of document links.
+     * @return Bytes used.
+     */
+    static long estimatePostingsSize(int numLinks){
+        return 2 * (16 + 4L * numLinks);
     }
 
     @Override
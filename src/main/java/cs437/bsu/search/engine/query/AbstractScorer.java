@@ -0,0 +1,65 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.index.Term;
+
+/**
+ * Base of the Scorers. The score of a term found in the title of a document
+ * is boosted by the {@value #TITLE_BOOST_PROP}. The bounds of a term are worked
+ * out from the highest impact and term frequency of each impact tier, kept by the
+ * Term when ordered by impact, so no document is scored to find them.
+ * @author Cade Peterson
+ */
+abstract class AbstractScorer implements Scorer {
+
+    /** Property for the factor the score of a term found in the title is multiplied by. Defaults to 2. */
+    public static final String TITLE_BOOST_PROP = "query.title.boost";
+
+    private double titleBoost = Double.parseDouble(System.getProperty(TITLE_BOOST_PROP, "2"));
+
+    @Override
+    public final double score(Term term, int docId){
+        double score = scoreBody(term, docId);
+        return term.isInTitle(docId) ? score * titleBoost : score;
+    }
+
+    /**
+     * Scores a term within the body of a document, without any title boost.
+     * @param term Term of the query.
+     * @param docId ID of the document.
+     * @return Score of the term, 0 if not found in the document.
+     */
+    protected abstract double scoreBody(Term term, int docId);
+
+    /**
+     * Gets the most a term can score within the body of any document of a tier.
+     * @param term Term of the query.
+     * @param tier Index of the impact tier.
+     * @return Upper bound of {@link #scoreBody(Term, int)} within the tier.
+     * @see Term#getTierImpact(int)
+     * @see Term#getTierFrequency(int)
+     */
+    protected abstract double getTierBodyBound(Term term, int tier);
+
+    /**
+     * Gets the most a term's score can be boosted by the title.
+     * @param term Term of the query.
+     * @return Boost factor, 1 if the term isn't in any title.
+     */
+    protected double getMaxTitleBoost(Term term){
+        return term.getTitleDocIds().length > 0 ? Math.max(1, titleBoost) : 1;
+    }
+
+    @Override
+    public double getUpperBound(Term term){
+        return getTierBounds(term)[0];
+    }
+
+    @Override
+    public double[] getTierBounds(Term term){
+        double boost = getMaxTitleBoost(term);
+        double[] bounds = new double[term.getNumTiers() + 1];
+        for(int tier = term.getNumTiers() - 1; tier >= 0; tier--)
+            bounds[tier] = Math.max(bounds[tier + 1], getTierBodyBound(term, tier) * boost);
+        return bounds;
+    }
+}
@@ -0,0 +1,65 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.index.IndexLoader;
+import cs437.bsu.search.engine.index.Term;
+
+/**
+ * Okapi BM25 Scorer. The term frequency saturates as it grows, controlled by
+ * {@value #K1_PROP}, and is normalized by the length of the document against
+ * the average length, controlled by {@value #B_PROP}. Indexes without document
+ * lengths are scored as if every document had the average length.
+ * @author Cade Peterson
+ */
+class BM25Scorer extends AbstractScorer {
+
+    /** Property for the term frequency saturation. Defaults to 1.2. */
+    public static final String K1_PROP = "query.bm25.k1";
+    /** Property for the document length normalization from 0-1. Defaults to 0.75. */
+    public static final String B_PROP = "query.bm25.b";
+
+    private double k1;
+    private double b;
+
+    /** Creates the Scorer with the parameters from the System Properties. */
+    BM25Scorer(){
+        k1 = Double.parseDouble(System.getProperty(K1_PROP, "1.2"));
+        b = Double.parseDouble(System.getProperty(B_PROP, "0.75"));
+    }
+
+    @Override
+    protected double scoreBody(Term term, int docId){
+        int freq = term.getDocFrequency(docId);
+        if(freq == 0)
+            return 0;
+
+        IndexLoader il = IndexLoader.getInstance();
+        double avgLength = il.getAverageDocLength();
+        double lengthRatio = avgLength > 0 ? il.getDocLength(docId) / avgLength : 1;
+        return getIdf(term) * freq * (k1 + 1) / (freq + k1 * (1 - b + b * lengthRatio));
+    }
+
+    /**
+     * The score grows with the term frequency and shrinks with the document
+     * length, so the bound is the highest frequency of the tier in a document
+     * of no length. Terms that aren't impact ordered are bound by the
+     * saturation of the term frequency, (k1 + 1) times the IDF.
+     */
+    @Override
+    protected double getTierBodyBound(Term term, int tier){
+        int freq = term.getTierFrequency(tier);
+        if(freq == Integer.MAX_VALUE)
+            return getIdf(term) * (k1 + 1);
+        return getIdf(term) * freq * (k1 + 1) / (freq + k1 * Math.max(0, 1 - b));
+    }
+
+    /**
+     * Gets the IDF of a term.
+     * @param term Term of the query.
+     * @return IDF, always positive.
+     */
+    private static double getIdf(Term term){
+        int numDocs = IndexLoader.getInstance().getNumDocs();
+        int df = term.numberAssociatedDocs();
+        return Math.log(1 + (numDocs - df + 0.5) / (df + 0.5));
+    }
+}
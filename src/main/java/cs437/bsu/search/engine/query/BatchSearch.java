@@ -0,0 +1,231 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.container.Pair;
+import cs437.bsu.search.engine.index.IndexLoader;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs a file of queries, or the queries of an AOL query log directory, against
+ * the loaded Index without the prompt. Queries are run by a pool of workers with
+ * {@link SearchEngine#search(String)} and the ranked documents of each are written
+ * as they finish, either as TSV with one row per ranked document or as JSONL with
+ * one line per query. Once done the throughput and the latency of each query stage
+ * from the {@link QueryStats} are printed.
+ * <p>
+ * Queries are numbered in the order read so results written out of order can be
+ * matched to their query. Documents are written by their external ID.
+ * @author Cade Peterson
+ */
+public class BatchSearch {
+
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(BatchSearch.class);
+
+    /** Property for the file results are written to. */
+    public static final String OUTPUT_PROP = "batch.output";
+    /** Property for the format results are written in, "tsv" or "jsonl". */
+    public static final String FORMAT_PROP = "batch.format";
+    /** Property for the number of workers running queries. */
+    public static final String THREADS_PROP = "batch.threads";
+    /** Property for the max number of queries to run, 0 for all of them. */
+    public static final String MAX_QUERIES_PROP = "batch.queries.max";
+
+    /** Queries read ahead of the workers per worker. */
+    private static final int QUEUED_PER_THREAD = 64;
+
+    private File source;
+    private File output;
+    private boolean jsonl;
+    private int threads;
+    private long maxQueries;
+
+    /**
+     * Creates a batch over a source of queries.
+     * @param source File with a query per line, or a directory of AOL query logs.
+     */
+    public BatchSearch(File source){
+        this.source = source;
+        this.jsonl = System.getProperty(FORMAT_PROP, "tsv").equalsIgnoreCase("jsonl");
+        this.output = new File(System.getProperty(OUTPUT_PROP, "batch-results." + (jsonl ? "jsonl" : "tsv")));
+        this.threads = Math.max(1, Integer.parseInt(System.getProperty(THREADS_PROP, String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        this.maxQueries = Long.parseLong(System.getProperty(MAX_QUERIES_PROP, "0"));
+        LOGGER.info("Batch search. Source={},Output={},Threads={},MaxQueries={}", source, output, threads, maxQueries);
+    }
+
+    /** Runs every query and prints the throughput and latency once done. */
+    public void run(){
+        SearchEngine engine = new SearchEngine();
+        QueryStats stats = QueryStats.getInstance();
+        stats.reset();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Semaphore queued = new Semaphore(threads * QUEUED_PER_THREAD);
+        AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+        long submitted = 0;
+
+        try(BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), 1 << 16)){
+            if(!jsonl)
+                out.write("QueryID\tQuery\tRank\tDocumentID\tScore\n");
+
+            long[] count = new long[1];
+            forEachQuery((String query) -> {
+                long id = ++count[0];
+                queued.acquireUninterruptibly();
+                workers.execute(() -> {
+                    try{
+                        long queryStart = System.nanoTime();
+                        List<Pair<Integer, Double>> ranked = engine.search(query);
+                        stats.record(QueryStats.Stage.Total, queryStart);
+                        write(out, id, query, ranked);
+                    }catch (Exception e){
+                        failed.incrementAndGet();
+                        LOGGER.atWarn().setCause(e).log("Query {} failed: {}", id, query);
+                    }finally {
+                        queued.release();
+                    }
+                });
+            });
+            submitted = count[0];
+
+            workers.shutdown();
+            while(!workers.awaitTermination(1, TimeUnit.SECONDS))
+                LOGGER.debug("Waiting on {} queued queries.", threads * QUEUED_PER_THREAD - queued.availablePermits());
+        }catch (IOException e){
+            LOGGER.atError().setCause(e).log("Failed to run batch. Output={}", output);
+            workers.shutdownNow();
+            return;
+        }catch (InterruptedException e){
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+        System.out.printf("Queries: %d Failed: %d Threads: %d%n", submitted, failed.get(), threads);
+        System.out.printf("Duration: %.2f s Throughput: %.1f queries/s%n", seconds, submitted / Math.max(seconds, 1e-9));
+        System.out.println(stats.getReport());
+        System.out.printf("Results written to: %s%n", output.getAbsolutePath());
+    }
+
+    /**
+     * Reads the queries of the source. A file has a query per line. A directory
+     * is read as AOL query logs, the query being the second column of each line
+     * after the header. Blank queries are skipped.
+     * @param query Receives each query read, up to the {@value #MAX_QUERIES_PROP}.
+     * @throws IOException If the source fails to be read.
+     */
+    private void forEachQuery(Consumer<String> query) throws IOException {
+        File[] files = source.isDirectory() ? source.listFiles(File::isFile) : new File[]{source};
+        if(files == null)
+            throw new IOException("Failed to list query logs: " + source);
+        Arrays.sort(files);
+
+        long read = 0;
+        for(File f : files){
+            LOGGER.info("Reading queries from: {}", f);
+            try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))){
+                String line;
+                boolean header = source.isDirectory();
+                while((line = br.readLine()) != null){
+                    if(header) {
+                        header = false;
+                        continue;
+                    }
+
+                    if(source.isDirectory()) {
+                        String[] columns = line.split("\t", 3);
+                        line = columns.length > 1 ? columns[1] : "";
+                    }
+
+                    line = line.trim();
+                    if(line.isEmpty() || line.equals("-"))
+                        continue;
+
+                    query.accept(line);
+                    if(++read == maxQueries)
+                        return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the ranked documents of a query.
+     * @param out Writer of the results.
+     * @param id Number of the query.
+     * @param query Query run.
+     * @param ranked Ranked documents and their scores, best first.
+     * @throws IOException If writing fails.
+     */
+    private void write(Writer out, long id, String query, List<Pair<Integer, Double>> ranked) throws IOException {
+        IndexLoader il = IndexLoader.getInstance();
+        StringBuilder sb = new StringBuilder();
+        if(jsonl) {
+            sb.append("{\"id\":").append(id).append(",\"query\":\"");
+            escape(sb, query);
+            sb.append("\",\"results\":[");
+            for(int i = 0; i < ranked.size(); i++){
+                Pair<Integer, Double> r = ranked.get(i);
+                if(i > 0)
+                    sb.append(',');
+                sb.append("{\"doc\":").append(il.getExternalId(r.a)).append(",\"score\":");
+                appendScore(sb, r.b);
+                sb.append('}');
+            }
+            sb.append("]}\n");
+        }else {
+            String column = query.replace('\t', ' ');
+            for(int i = 0; i < ranked.size(); i++){
+                Pair<Integer, Double> r = ranked.get(i);
+                sb.append(id).append('\t').append(column).append('\t').append(i + 1).append('\t')
+                        .append(il.getExternalId(r.a)).append('\t').append(r.b).append('\n');
+            }
+        }
+
+        synchronized(out){
+            out.write(sb.toString());
+        }
+    }
+
+    /**
+     * Appends a score as a JSON number. NaN and infinite scores have no
+     * JSON number so are written as strings.
+     * @param sb Builder to append to.
+     * @param score Score to append.
+     */
+    private static void appendScore(StringBuilder sb, double score){
+        if(Double.isFinite(score))
+            sb.append(score);
+        else
+            sb.append('"').append(score).append('"');
+    }
+
+    /**
+     * Escapes a String for a JSON string literal.
+     * @param sb Builder to append to.
+     * @param s String to escape.
+     */
+    private static void escape(StringBuilder sb, String s){
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if(c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.index.Term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled plan of a structured query. Structured queries combine words with
+ * the operators below, words next to each other being joined by AND.
+ * <ul>
+ *     <li>AND, OR and NOT in upper case, NOT binding tightest then AND then OR.
+ *     <li>+word requires a word, the same as a plain word.
+ *     <li>-word excludes a word, the same as NOT word.
+ *     <li>title:word only matches documents with the word in their title.
+ *     <li>Parentheses group operators.
+ * </ul>
+ * The query is parsed into a tree of operators which is then optimized. Nested
+ * operators of the same kind are flattened, the children of an AND are ordered
+ * by their estimated document count so the smallest postings are intersected
+ * first, and NOT children are subtracted from the intersection rather than
+ * evaluated against every document.
+ * @author Cade Peterson
+ */
+public class QueryPlan {
+
+    private static final Pattern STRUCTURED_PATTERN = Pattern.compile("(^|\\s)(AND|OR|NOT)(\\s|$)|(^|[\\s(])[+-]\\S|[()]|(?i)(^|[\\s(+-])title:\\S");
+    private static final String TITLE_FIELD = "title:";
+
+    /**
+     * Dictates if a query uses any operator of the query language.
+     * Queries without any are plain bags of terms.
+     * @param query Query to check.
+     * @return true if structured, otherwise false.
+     */
+    public static boolean isStructured(String query){
+        return STRUCTURED_PATTERN.matcher(query).find();
+    }
+
+    /**
+     * Parses and optimizes a structured query.
+     * @param query Query to compile.
+     * @param analyzer Turns a word of the query into the Terms found in the Index,
+     *                 a null Term for each token not in the Index. An empty list
+     *                 means the word is ignored, such as a stop word.
+     * @return Compiled plan.
+     * @throws IllegalArgumentException If the query is invalid.
+     */
+    public static QueryPlan compile(String query, Function<String, List<Term>> analyzer){
+        Node root = new Parser(query, analyzer).parse();
+        if(root == null)
+            throw new IllegalArgumentException("The query has no words that can be searched.");
+
+        root = root.optimize();
+        if(root instanceof Not)
+            throw new IllegalArgumentException("A query needs a word that isn't excluded.");
+        return new QueryPlan(root);
+    }
+
+    private Node root;
+
+    /**
+     * Creates a plan.
+     * @param root Optimized operator tree.
+     */
+    private QueryPlan(Node root){
+        this.root = root;
+    }
+
+    /**
+     * Runs the plan against the postings.
+     * @return Sorted IDs of the matching documents.
+     */
+    public int[] execute(){
+        return root.evaluate();
+    }
+
+    /**
+     * Gets the Terms documents are ranked by, every Term that isn't excluded.
+     * A Term used more than once in the query is only given once.
+     * @return Terms to rank by, in the order first used.
+     */
+    public List<Term> getTerms(){
+        Set<Term> terms = new LinkedHashSet<>();
+        root.collectTerms(terms);
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Describes the optimized plan with the estimated document count of each operator.
+     * @return Plan description.
+     */
+    public String explain(){
+        return root.explain();
+    }
+
+    /**
+     * Intersects two sorted arrays of Document IDs.
+     * @param one Sorted IDs.
+     * @param two Sorted IDs.
+     * @return New sorted array of IDs in both.
+     */
+    static int[] intersect(int[] one, int[] two){
+        int[] result = new int[Math.min(one.length, two.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while(i < one.length && j < two.length){
+            if(one[i] < two[j]) {
+                i++;
+            }else if(one[i] > two[j]) {
+                j++;
+            }else {
+                result[size++] = one[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Unites two sorted arrays of Document IDs.
+     * @param one Sorted IDs.
+     * @param two Sorted IDs.
+     * @return New sorted array of IDs in either.
+     */
+    static int[] union(int[] one, int[] two){
+        int[] result = new int[one.length + two.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while(i < one.length || j < two.length){
+            if(j == two.length || (i < one.length && one[i] < two[j])) {
+                result[size++] = one[i++];
+            }else if(i == one.length || one[i] > two[j]) {
+                result[size++] = two[j++];
+            }else {
+                result[size++] = one[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Removes the IDs of one sorted array from another.
+     * @param from Sorted IDs to keep.
+     * @param excluded Sorted IDs to remove.
+     * @return New sorted array of IDs only in from.
+     */
+    static int[] subtract(int[] from, int[] excluded){
+        int[] result = new int[from.length];
+        int size = 0;
+        int j = 0;
+        for(int id : from){
+            while(j < excluded.length && excluded[j] < id)
+                j++;
+            if(j == excluded.length || excluded[j] != id)
+                result[size++] = id;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /** Operator of a query plan. */
+    private static abstract class Node {
+
+        /**
+         * Evaluates the operator.
+         * @return Sorted IDs of the matching documents.
+         */
+        abstract int[] evaluate();
+
+        /**
+         * Estimates the number of documents matched.
+         * @return Estimated document count.
+         */
+        abstract long cost();
+
+        /**
+         * Optimizes the operator and its children.
+         * @return Optimized operator.
+         */
+        Node optimize(){
+            return this;
+        }
+
+        /**
+         * Adds the Terms that aren't excluded.
+         * @param terms Terms to add to.
+         */
+        abstract void collectTerms(Collection<Term> terms);
+
+        /**
+         * Describes the operator.
+         * @return Description.
+         */
+        abstract String explain();
+    }
+
+    /** Matches the documents of a Term. */
+    private static class TermNode extends Node {
+
+        private String word;
+        private Term term;
+
+        /**
+         * Creates the operator.
+         * @param word Word of the query.
+         * @param term Term of the word, null if not in the Index.
+         */
+        TermNode(String word, Term term){
+            this.word = word;
+            this.term = term;
+        }
+
+        @Override
+        int[] evaluate(){
+            return term == null ? new int[0] : term.getDocIds();
+        }
+
+        @Override
+        long cost(){
+            return term == null ? 0 : term.numberAssociatedDocs();
+        }
+
+        @Override
+        void collectTerms(Collection<Term> terms){
+            if(term != null)
+                terms.add(term);
+        }
+
+        @Override
+        String explain(){
+            return (term == null ? word : term.getToken()) + "[" + cost() + "]";
+        }
+    }
+
+    /**
+     * Matches the documents of a Term with the Term in their title, read from
+     * the title postings.
+     */
+    private static class TitleNode extends Node {
+
+        private TermNode child;
+
+        /**
+         * Creates the operator.
+         * @param child Term to find in titles.
+         */
+        TitleNode(TermNode child){
+            this.child = child;
+        }
+
+        @Override
+        int[] evaluate(){
+            return child.term == null ? new int[0] : child.term.getTitleDocIds();
+        }
+
+        @Override
+        long cost(){
+            return child.term == null ? 0 : child.term.getTitleDocIds().length;
+        }
+
+        @Override
+        void collectTerms(Collection<Term> terms){
+            child.collectTerms(terms);
+        }
+
+        @Override
+        String explain(){
+            return TITLE_FIELD + child.explain();
+        }
+    }
+
+    /** Excludes the documents of its child. Only valid within an AND. */
+    private static class Not extends Node {
+
+        private Node child;
+
+        /**
+         * Creates the operator.
+         * @param child Operator to exclude.
+         */
+        Not(Node child){
+            this.child = child;
+        }
+
+        @Override
+        int[] evaluate(){
+            throw new IllegalStateException("NOT is only evaluated within an AND.");
+        }
+
+        @Override
+        long cost(){
+            return child.cost();
+        }
+
+        @Override
+        Node optimize(){
+            Node optimized = child.optimize();
+            if(optimized instanceof Not)
+                return ((Not) optimized).child;
+            return new Not(optimized);
+        }
+
+        @Override
+        void collectTerms(Collection<Term> terms){}
+
+        @Override
+        String explain(){
+            return "NOT " + child.explain();
+        }
+    }
+
+    /** Matches the documents of every child, excluding those of NOT children. */
+    private static class And extends Node {
+
+        private List<Node> children;
+        private List<Node> excluded;
+
+        /**
+         * Creates the operator.
+         * @param children Operators to intersect.
+         */
+        And(List<Node> children){
+            this.children = children;
+            this.excluded = new ArrayList<>();
+        }
+
+        @Override
+        int[] evaluate(){
+            // Cheapest first, the intersection never growing past it
+            int[] result = children.get(0).evaluate();
+            for(int i = 1; i < children.size() && result.length > 0; i++)
+                result = intersect(result, children.get(i).evaluate());
+            for(int i = 0; i < excluded.size() && result.length > 0; i++)
+                result = subtract(result, excluded.get(i).evaluate());
+            return result;
+        }
+
+        @Override
+        long cost(){
+            long min = Long.MAX_VALUE;
+            for(Node child : children)
+                min = Math.min(min, child.cost());
+            return min;
+        }
+
+        @Override
+        Node optimize(){
+            List<Node> included = new ArrayList<>();
+            List<Node> excludedNodes = new ArrayList<>();
+            flatten(this, included, excludedNodes);
+            if(included.isEmpty())
+                throw new IllegalArgumentException("A query needs a word that isn't excluded.");
+            if(included.size() == 1 && excludedNodes.isEmpty())
+                return included.get(0);
+
+            included.sort(Comparator.comparingLong(Node::cost));
+            excludedNodes.sort(Comparator.comparingLong(Node::cost));
+            And and = new And(included);
+            and.excluded = excludedNodes;
+            return and;
+        }
+
+        /**
+         * Gathers the optimized children of nested ANDs.
+         * @param node AND to gather from.
+         * @param included Children to intersect.
+         * @param excluded Children of NOT children to subtract.
+         */
+        private static void flatten(And node, List<Node> included, List<Node> excluded){
+            for(Node child : node.children){
+                Node optimized = child.optimize();
+                if(optimized instanceof And) {
+                    And and = (And) optimized;
+                    included.addAll(and.children);
+                    excluded.addAll(and.excluded);
+                }else if(optimized instanceof Not) {
+                    excluded.add(((Not) optimized).child);
+                }else {
+                    included.add(optimized);
+                }
+            }
+        }
+
+        @Override
+        void collectTerms(Collection<Term> terms){
+            for(Node child : children)
+                child.collectTerms(terms);
+        }
+
+        @Override
+        String explain(){
+            StringBuilder sb = new StringBuilder("AND(");
+            for(int i = 0; i < children.size(); i++)
+                sb.append(i == 0 ? "" : ", ").append(children.get(i).explain());
+            for(Node node : excluded)
+                sb.append(", NOT ").append(node.explain());
+            return sb.append(")").toString();
+        }
+    }
+
+    /** Matches the documents of any child. */
+    private static class Or extends Node {
+
+        private List<Node> children;
+
+        /**
+         * Creates the operator.
+         * @param children Operators to unite.
+         */
+        Or(List<Node> children){
+            this.children = children;
+        }
+
+        @Override
+        int[] evaluate(){
+            int[] result = new int[0];
+            for(Node child : children)
+                result = union(result, child.evaluate());
+            return result;
+        }
+
+        @Override
+        long cost(){
+            long sum = 0;
+            for(Node child : children)
+                sum += child.cost();
+            return sum;
+        }
+
+        @Override
+        Node optimize(){
+            List<Node> flat = new ArrayList<>();
+            for(Node child : children){
+                Node optimized = child.optimize();
+                if(optimized instanceof Not)
+                    throw new IllegalArgumentException("NOT can't be used as a side of OR.");
+                if(optimized instanceof Or)
+                    flat.addAll(((Or) optimized).children);
+                else
+                    flat.add(optimized);
+            }
+            if(flat.size() == 1)
+                return flat.get(0);
+
+            // Smallest first keeps the unions small
+            flat.sort(Comparator.comparingLong(Node::cost));
+            return new Or(flat);
+        }
+
+        @Override
+        void collectTerms(Collection<Term> terms){
+            for(Node child : children)
+                child.collectTerms(terms);
+        }
+
+        @Override
+        String explain(){
+            StringBuilder sb = new StringBuilder("OR(");
+            for(int i = 0; i < children.size(); i++)
+                sb.append(i == 0 ? "" : ", ").append(children.get(i).explain());
+            return sb.append(")").toString();
+        }
+    }
+
+    /**
+     * Recursive descent parser of the query language. Words that are
+     * ignored by the analyzer are dropped from the operator they're in.
+     */
+    private static class Parser {
+
+        private List<String> lexemes;
+        private int next;
+        private Function<String, List<Term>> analyzer;
+
+        /**
+         * Splits a query into parentheses and words.
+         * @param query Query to parse.
+         * @param analyzer Turns a word into Terms.
+         */
+        Parser(String query, Function<String, List<Term>> analyzer){
+            this.analyzer = analyzer;
+            this.lexemes = new ArrayList<>();
+            StringBuilder word = new StringBuilder();
+            for(char c : query.toCharArray()){
+                if(Character.isWhitespace(c) || c == '(' || c == ')') {
+                    if(word.length() > 0)
+                        lexemes.add(word.toString());
+                    word.setLength(0);
+                    if(c == '(' || c == ')')
+                        lexemes.add(String.valueOf(c));
+                }else {
+                    word.append(c);
+                }
+            }
+            if(word.length() > 0)
+                lexemes.add(word.toString());
+        }
+
+        /**
+         * Parses the whole query.
+         * @return Root operator or null if every word was ignored.
+         */
+        Node parse(){
+            Node root = parseOr();
+            if(next < lexemes.size())
+                throw new IllegalArgumentException("Unexpected '" + lexemes.get(next) + "'.");
+            return root;
+        }
+
+        private Node parseOr(){
+            List<Node> children = new ArrayList<>();
+            add(children, parseAnd());
+            while("OR".equals(peek())){
+                next++;
+                add(children, parseAnd());
+            }
+            return children.isEmpty() ? null : children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private Node parseAnd(){
+            List<Node> children = new ArrayList<>();
+            while(peek() != null && !peek().equals(")") && !peek().equals("OR")){
+                if(peek().equals("AND")) {
+                    next++;
+                    continue;
+                }
+                add(children, parseUnary());
+            }
+            return children.isEmpty() ? null : children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private Node parseUnary(){
+            String lexeme = peek();
+            if(lexeme.equals("NOT") || lexeme.equals("-")) {
+                next++;
+                Node child = parseOperand();
+                return child == null ? null : new Not(child);
+            }
+            if(lexeme.equals("+"))
+                next++;
+            return parseOperand();
+        }
+
+        private Node parseOperand(){
+            if(peek() == null)
+                throw new IllegalArgumentException("Query ends with an operator.");
+
+            String lexeme = lexemes.get(next++);
+            if(lexeme.equals("(")) {
+                Node group = parseOr();
+                if(!")".equals(peek()))
+                    throw new IllegalArgumentException("Missing ')'.");
+                next++;
+                return group;
+            }
+            if(lexeme.equals(")"))
+                throw new IllegalArgumentException("Unexpected ')'.");
+            if(lexeme.equals("NOT") || lexeme.startsWith("-") && lexeme.length() > 1) {
+                Node child = lexeme.equals("NOT") ? parseOperand() : parseWord(lexeme.substring(1));
+                return child == null ? null : new Not(child);
+            }
+            if(lexeme.startsWith("+") && lexeme.length() > 1)
+                return parseWord(lexeme.substring(1));
+            return parseWord(lexeme);
+        }
+
+        /**
+         * Turns a word into its operator.
+         * @param word Word with an optional field.
+         * @return Operator or null if the word is ignored.
+         */
+        private Node parseWord(String word){
+            boolean title = word.toLowerCase().startsWith(TITLE_FIELD);
+            if(title)
+                word = word.substring(TITLE_FIELD.length());
+
+            List<Node> nodes = new ArrayList<>();
+            for(Term term : analyzer.apply(word)){
+                TermNode node = new TermNode(word, term);
+                nodes.add(title ? new TitleNode(node) : node);
+            }
+            return nodes.isEmpty() ? null : nodes.size() == 1 ? nodes.get(0) : new And(nodes);
+        }
+
+        private String peek(){
+            return next < lexemes.size() ? lexemes.get(next) : null;
+        }
+
+        private static void add(List<Node> nodes, Node node){
+            if(node != null)
+                nodes.add(node);
+        }
+    }
+}
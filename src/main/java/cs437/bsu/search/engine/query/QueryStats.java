@@ -0,0 +1,130 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.util.LatencyHistogram;
+import cs437.bsu.search.engine.util.Management;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latency of each stage of processing a query, recorded into a
+ * {@link LatencyHistogram} per stage. Reported through the stats
+ * command of the {@link SearchEngine} and through JMX.
+ * This class is a Singleton.
+ * @author Cade Peterson
+ */
+public class QueryStats implements QueryStatsMXBean {
+
+    private static QueryStats INSTANCE;
+
+    /**
+     * Gets this classes instance. The instance is registered
+     * with JMX when first created.
+     * @return Class Instance.
+     */
+    public static synchronized QueryStats getInstance(){
+        if(INSTANCE == null) {
+            INSTANCE = new QueryStats();
+            Management.register(INSTANCE, "QueryStats");
+        }
+        return INSTANCE;
+    }
+
+    /** Stages of processing a query. */
+    public enum Stage {
+        /** Scanning the query into tokens. */
+        Analysis,
+        /** Finding the tokens in the Index. */
+        TermLookup,
+        /** Finding the documents matching the terms. */
+        CandidateRetrieval,
+        /** Checking the positions of the terms of a phrase query. */
+        PhraseVerification,
+        /** Ranking the matching documents. */
+        Ranking,
+        /** Generating the snippets of the top documents. */
+        Snippets,
+        /** Finding the query suggestions. */
+        Suggestions,
+        /** The whole query. */
+        Total
+    }
+
+    private Map<Stage, LatencyHistogram> histograms;
+
+    /** Sets up a histogram per stage. */
+    private QueryStats(){
+        histograms = new EnumMap<>(Stage.class);
+        for(Stage stage : Stage.values())
+            histograms.put(stage, new LatencyHistogram());
+    }
+
+    /**
+     * Records the latency of a stage.
+     * @param stage Stage timed.
+     * @param startNanos {@link System#nanoTime()} at the start of the stage.
+     * @return {@link System#nanoTime()} at the time recorded, the start of the next stage.
+     */
+    public long record(Stage stage, long startNanos){
+        long now = System.nanoTime();
+        histograms.get(stage).record(now - startNanos);
+        return now;
+    }
+
+    @Override
+    public long getQueryCount(){
+        return histograms.get(Stage.Total).getCount();
+    }
+
+    @Override
+    public Map<String, Double> getP50Millis(){
+        return getPercentileMillis(50);
+    }
+
+    @Override
+    public Map<String, Double> getP95Millis(){
+        return getPercentileMillis(95);
+    }
+
+    @Override
+    public Map<String, Double> getP99Millis(){
+        return getPercentileMillis(99);
+    }
+
+    @Override
+    public String getReport(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Queries: %d%n", getQueryCount()));
+        sb.append(String.format("%-20s %8s %10s %10s %10s %10s %10s%n", "Stage (ms)", "Count", "Mean", "p50", "p95", "p99", "Max"));
+        for(Map.Entry<Stage, LatencyHistogram> entry : histograms.entrySet()){
+            LatencyHistogram h = entry.getValue();
+            sb.append(String.format("%-20s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(), h.getCount(),
+                    toMillis(h.getMean()), toMillis(h.getPercentile(50)), toMillis(h.getPercentile(95)),
+                    toMillis(h.getPercentile(99)), toMillis(h.getMax())));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset(){
+        for(LatencyHistogram h : histograms.values())
+            h.reset();
+    }
+
+    /**
+     * Gets a percentile of every stage.
+     * @param percentile Percentile from 0-100.
+     * @return Stage name to milliseconds.
+     */
+    private Map<String, Double> getPercentileMillis(double percentile){
+        Map<String, Double> millis = new LinkedHashMap<>();
+        for(Map.Entry<Stage, LatencyHistogram> entry : histograms.entrySet())
+            millis.put(entry.getKey().name(), toMillis(entry.getValue().getPercentile(percentile)));
+        return millis;
+    }
+
+    private static double toMillis(double nanos){
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,44 @@
+package cs437.bsu.search.engine.query;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link QueryStats}. Latencies are in milliseconds
+ * and keyed by the name of each {@link QueryStats.Stage}.
+ * @author Cade Peterson
+ */
+public interface QueryStatsMXBean {
+
+    /**
+     * Gets the number of queries processed.
+     * @return Query count.
+     */
+    long getQueryCount();
+
+    /**
+     * Gets the median latency of each stage.
+     * @return Stage to milliseconds.
+     */
+    Map<String, Double> getP50Millis();
+
+    /**
+     * Gets the 95th percentile latency of each stage.
+     * @return Stage to milliseconds.
+     */
+    Map<String, Double> getP95Millis();
+
+    /**
+     * Gets the 99th percentile latency of each stage.
+     * @return Stage to milliseconds.
+     */
+    Map<String, Double> getP99Millis();
+
+    /**
+     * Gets the report printed by the stats command.
+     * @return Latency report.
+     */
+    String getReport();
+
+    /** Clears all recorded latencies. */
+    void reset();
+}
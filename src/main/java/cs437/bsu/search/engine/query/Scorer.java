@@ -0,0 +1,116 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.index.Term;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import org.slf4j.Logger;
+
+import java.util.List;
+
+/**
+ * Scores documents against the terms of a query. The score of a document is
+ * the sum of the score of each term within it. Each Scorer also provides an
+ * upper bound of the score a term can give any document, so documents that
+ * can't beat the ones already ranked can be skipped without being fully scored.
+ * @author Cade Peterson
+ */
+public interface Scorer {
+
+    /**
+     * Scoring functions that can be used to rank documents. The one used is
+     * configurable through the {@value #SCORER_PROP} property and can be
+     * chosen for a single query, defaulting to {@link #TfIdf}.
+     */
+    enum Type {
+        /** Term frequency normalized by the highest term frequency of the document, times the IDF. **/
+        TfIdf   (new TfIdfScorer()),
+        /** Okapi BM25, term frequency saturated and normalized by the document length. **/
+        BM25    (new BM25Scorer());
+
+        private Scorer scorer;
+
+        /**
+         * Constructs an enum with its scorer.
+         * @param scorer Scorer of this type.
+         */
+        private Type(Scorer scorer){
+            this.scorer = scorer;
+        }
+
+        /**
+         * Gets the scorer of this type.
+         * @return Scorer.
+         */
+        public Scorer getScorer(){
+            return scorer;
+        }
+
+        /**
+         * Gets the type matching a name, ignoring case.
+         * @param name Name of the type.
+         * @return Type matching the name or null if none.
+         */
+        public static Type fromName(String name){
+            for(Type type : values()){
+                if(type.name().equalsIgnoreCase(name.trim()))
+                    return type;
+            }
+            return null;
+        }
+
+        /**
+         * Gets the type set by the {@value #SCORER_PROP} System Property.
+         * @return Type named by the property, or {@link #TfIdf} if not set or invalid.
+         */
+        public static Type fromProperty(){
+            String name = System.getProperty(SCORER_PROP, "");
+            Type type = fromName(name);
+            if(type != null)
+                return type;
+
+            if(!name.isBlank())
+                LoggerInitializer.getInstance().getSimpleLogger(Scorer.class).warn("Unknown scorer '{}' for {}. Using {}.", name, SCORER_PROP, TfIdf);
+            return TfIdf;
+        }
+    }
+
+    /** Property naming the {@link Type} of Scorer used when a query doesn't choose one. */
+    String SCORER_PROP = "query.scorer";
+
+    /**
+     * Scores a term within a document.
+     * @param term Term of the query.
+     * @param docId ID of the document.
+     * @return Score of the term, 0 if not found in the document.
+     */
+    double score(Term term, int docId);
+
+    /**
+     * Gets a bound on the highest score a term gives any document.
+     * @param term Term of the query.
+     * @return Upper bound of {@link #score(Term, int)} for the term.
+     */
+    double getUpperBound(Term term);
+
+    /**
+     * Gets a bound on the highest score a term gives the documents of each of its
+     * impact tiers and those after it. As the score of a document may not
+     * follow its impact, entry k bounds the scores of tiers k onwards.
+     * @param term Term of the query.
+     * @return Bound from each tier onwards, with a last entry of 0.
+     * @see Term#getNumTiers()
+     */
+    double[] getTierBounds(Term term);
+
+    /**
+     * Scores a document against all terms of a query.
+     * @param docId ID of the document.
+     * @param terms Terms of the query.
+     * @return Score of the document.
+     */
+    default double score(int docId, List<Term> terms){
+        double sum = 0;
+        for(Term t : terms)
+            sum += score(t, docId);
+        return sum;
+    }
+}
@@ -8,7 +8,6 @@ import cs437.bsu.search.engine.index.IndexLoader;
 import cs437.bsu.search.engine.index.Term;
 import cs437.bsu.search.engine.index.Doc;
 import cs437.bsu.search.engine.suggestions.AOLMap;
-import cs437.bsu.search.engine.suggestions.Query;
 import cs437.bsu.search.engine.suggestions.Suggestion;
 import cs437.bsu.search.engine.util.LoggerInitializer;
 import cs437.bsu.search.engine.util.TaskExecutor;
@@ -20,9 +19,10 @@ import org.slf4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.Phaser;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Search Engine Application. Facilitates all functions of asking the
@@ -37,22 +37,49 @@ public class SearchEngine extends Thread {
 
     private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(SearchEngine.class);
     private static final String EXIT_KEYWORD = "exit()";
+    private static final String STATS_KEYWORD = "stats()";
+    private static final String COMPLETE_SUFFIX = "*";
+    private static final Pattern PHRASE_PATTERN = Pattern.compile("^\"(.+)\"(?:~(\\d+))?$");
+    private static final Pattern OPTIONS_PATTERN = Pattern.compile("^\\[([\\w,\\s]+)\\]\\s*(.*)$");
+    private static final String IMPACT_OPTION = "impact";
+
+    /** Property to rank queries by scanning impact tiers until the top 5 can't change. Defaults to false. */
+    public static final String IMPACT_MODE_PROP = "query.impact";
+
+    /** Orders ranked documents by score, ascending. Documents with equal scores are treated as the same. */
+    private static final Comparator<Pair<Integer, Double>> RANK_ORDER = new Comparator<Pair<Integer, Double>>() {
+        @Override
+        public int compare(Pair<Integer, Double> o1, Pair<Integer, Double> o2) {
+            double diff = o1.b - o2.b;
+            if(diff == 0)
+                return 0;
+            else
+                return diff < 0 ? -1 : 1;
+        }
+    };
 
     private boolean exit;
     private Scanner queryReader;
     private String newScreen;
     private AOLMap aolMap;
+    private QueryStats stats;
+    private Scorer.Type defaultScorer;
+    private boolean defaultImpactMode;
 
     /**
      * Creates the Search Engine. Note the {@link TextScanner} is loaded and might
      * delay this method invocation a bit, however this prevents further lag in
      * future requests for it.
+     * @param aolMap Query suggestions. These might still be loading, in which
+     *               case no suggestions are provided until {@link AOLMap#isReady()}.
      */
     public SearchEngine(AOLMap aolMap){
         exit = false;
         this.aolMap = aolMap;
-
-        queryReader = new Scanner(System.in);
+        this.stats = QueryStats.getInstance();
+        this.defaultScorer = Scorer.Type.fromProperty();
+        this.defaultImpactMode = Boolean.parseBoolean(System.getProperty(IMPACT_MODE_PROP, "false"));
+        LOGGER.info("Default scorer: {} Impact mode: {}", defaultScorer, defaultImpactMode);
 
         StringBuilder sb = new StringBuilder();
         for(int i = 0; i < 70; i++)
@@ -64,8 +91,18 @@ public class SearchEngine extends Thread {
         TextScanner.getInstance();
     }
 
+    /**
+     * Creates a Search Engine that only runs queries through {@link #search(String)},
+     * such as for a {@link BatchSearch}. It has no query suggestions so isn't to be started,
+     * standard input only being read once started.
+     */
+    public SearchEngine(){
+        this(null);
+    }
+
     @Override
     public void run() {
+        queryReader = new Scanner(System.in);
         clearScreen();
 
         boolean setSuggestion = false;
@@ -84,6 +121,11 @@ public class SearchEngine extends Thread {
                 continue;
             }
 
+            if(query.equalsIgnoreCase(STATS_KEYWORD)){
+                System.out.println(stats.getReport());
+                continue;
+            }
+
             if(prevSugg != null) {
                 for(int i = 0; i < prevSugg.size(); i++) {
 
@@ -97,11 +139,19 @@ public class SearchEngine extends Thread {
                 }
             }
 
-            long start = System.currentTimeMillis();
+            if(query.endsWith(COMPLETE_SUFFIX) && query.length() > COMPLETE_SUFFIX.length()){
+                prevSugg = getCompletions(query.substring(0, query.length() - COMPLETE_SUFFIX.length()));
+                continue;
+            }
+
+            long start = System.nanoTime();
             processQuery(query);
+            long suggestionStart = System.nanoTime();
             prevSugg = getSuggestions(query);
             System.out.flush();
-            String time = Run.getTimeLength(System.currentTimeMillis() - start);
+            stats.record(QueryStats.Stage.Suggestions, suggestionStart);
+            stats.record(QueryStats.Stage.Total, start);
+            String time = Run.getTimeLength((System.nanoTime() - start) / 1_000_000);
             LOGGER.info("Query Result Time: {}", time);
         }
         System.out.println("Exiting Search Engine.");
@@ -109,88 +159,69 @@ public class SearchEngine extends Thread {
         Run.appDone = true;
     }
 
-        private ArrayList<String> getSuggestions(String query) {
-
-        Map<String, Set<Query>> queryLogMap = aolMap.getMap();
-        Set<Query> querySessions = queryLogMap.get(query);
-        String[] parts = query.split("\\s+");
-        ArrayList<String> ret = new ArrayList<String>(5);
-
-        if (querySessions != null) {
+    /**
+     * Prints the most frequent logged queries starting with a prefix.
+     * Like suggestions each can be chosen by entering its number.
+     * @param prefix Prefix of a query.
+     * @return Completions printed.
+     */
+    private ArrayList<String> getCompletions(String prefix) {
 
-            // # of sessions in which q' is modified to CQ = qcToItsFreq.get(qc);
-            Map<String, Integer> qcToItsFreq = new HashMap<>();
+        ArrayList<String> ret = new ArrayList<String>();
+        System.out.println("---------------------------------------------------------");
+        if (!aolMap.isReady()) {
 
-            Iterator<Query> it = querySessions.iterator();
-            while (it.hasNext()) {
-                Query curr = it.next();
+            System.out.println("Completions are unavailable until the AOL query logs are loaded.\n");
+            return ret;
+        }
 
-                for (Query qc : curr.getQC(parts)) {
-                    Integer i = qcToItsFreq.get(qc.getQuery());
+        long start = System.nanoTime();
+        List<Suggestion> completions = aolMap.complete(prefix, 5);
+        LOGGER.debug("Completion Time: {} us", (System.nanoTime() - start) / 1000);
 
-                    if (i == null)
-                        qcToItsFreq.put(qc.getQuery(), 1);
-                    else
-                        qcToItsFreq.put(qc.getQuery(), i + 1);
-                }
-            }
+        if (completions.isEmpty()) {
 
-            PriorityQueue<Suggestion> suggestion = getTopSuggestions(qcToItsFreq);
-            System.out.println("---------------------------------------------------------");
+            System.out.println("No completions found for \"" + prefix + "\"\n");
+            return ret;
+        }
 
-            DecimalFormat df = new DecimalFormat("#.######");
-            int denom = queryLogMap.get(query).size();
+        System.out.println("Queries starting with \"" + prefix + "\": ");
+        for (int i = 0; i < completions.size(); i++) {
 
-            if (suggestion.size() > 0) {
+            System.out.println("        " + (i+1) + ". " + completions.get(i).getKey() + " ---> Enter " + (i+1) + ".");
+            ret.add(completions.get(i).getKey());
+        }
+        return ret;
+    }
 
-                System.out.println("Instead of \"" + query + "\" would you like to search for: ");
-                for (int i = 0; i < 5; i++) {
+    private ArrayList<String> getSuggestions(String query) {
 
-                    Suggestion sugg = suggestion.poll();
+        ArrayList<String> ret = new ArrayList<String>();
+        System.out.println("---------------------------------------------------------");
+        if (!aolMap.isReady()) {
 
-                    if(sugg != null) {
+            System.out.println("Suggestions are unavailable until the AOL query logs are loaded.\n");
+            return ret;
+        }
 
-//                        double score = (float) sugg.getFreq() / denom;
-//                        String sc = df.format(score);
-                        System.out.println("        " + (i+1) + ". " + sugg.getKey() + " ---> Enter " + (i+1) + ".");
-                        ret.add(sugg.getKey());
-                    }
-                    else {
+        List<Suggestion> suggestions = aolMap.getSuggestions(query);
+        if (!suggestions.isEmpty()) {
 
-                        break;
-                    }
-                }
-            } else {
+            System.out.println("Instead of \"" + query + "\" would you like to search for: ");
+            for (int i = 0; i < suggestions.size(); i++) {
 
-                System.out.println("No suggestions found for this query\n");
+                Suggestion sugg = suggestions.get(i);
+                System.out.println("        " + (i+1) + ". " + sugg.getKey() + " ---> Enter " + (i+1) + ".");
+                ret.add(sugg.getKey());
             }
-        }
+        } else {
 
-        else {
-
-            System.out.println("---------------------------------------------------------");
             System.out.println("No suggestions found for this query\n");
         }
 
         return ret;
     }
 
-    public static PriorityQueue<Suggestion> getTopSuggestions(Map<String, Integer> qcFreq) {
-
-        PriorityQueue<Suggestion> topFive = new PriorityQueue<Suggestion>();
-
-        int lowFreq = 0;
-        int highFreq = 0;
-
-        for (String s : qcFreq.keySet()) {
-
-            Suggestion add = new Suggestion(s, qcFreq.get(s));
-            topFive.add(add);
-        }
-
-        return topFive;
-    }
-
     /**
      * Clears the current Terminal Window.
      */
@@ -201,36 +232,335 @@ public class SearchEngine extends Thread {
 
     /**
      * Processes a Query and gathers relevant documents
-     * associated to the query.
+     * associated to the query. The latency of each stage
+     * is recorded in the {@link QueryStats}.
      * @param query Query to process.
      */
     private void processQuery(String query){
         LOGGER.info("Processing Query: {}", query);
-        List<Term> tokens = getQueryTokens(query);
+
+        QueryOptions options = parseOptions(query);
+        for(String option : options.unknown)
+            System.out.printf("%n\tUnknown query option '%s'.%n", option);
+        query = options.query;
+
+        Matcher phrase = PHRASE_PATTERN.matcher(query.trim());
+        if(phrase.matches()) {
+            int slop = phrase.group(2) == null ? 0 : Integer.parseInt(phrase.group(2));
+            processPhrase(phrase.group(1), slop, options.scorer);
+            return;
+        }
+
+        if(QueryPlan.isStructured(query)) {
+            processStructured(query, options.scorer);
+            return;
+        }
+
+        List<String> corrections = new ArrayList<>();
+        List<Term> tokens = getQueryTokens(query, corrections);
+        if(!corrections.isEmpty())
+            System.out.printf("%n\tShowing results for corrected terms: %s%n", String.join(", ", corrections));
 
         // If the process query has no tokens
         // then there is no need to check for documents.
         if(!tokens.isEmpty()) {
-            Set<Integer> relevantDocIds = getRelevantDocIds(tokens);
-            Set<Doc> docs = getDocuments(relevantDocIds);
-            List<Doc> top5Docs = rankDocs(docs, tokens);
-            printDocuments(top5Docs, tokens);
+            List<Pair<Integer, Double>> ranked = rankTerms(tokens, options.scorer, options.impactMode);
+            long start = System.nanoTime();
+            printDocuments(getDocuments(ranked), tokens);
+            stats.record(QueryStats.Stage.Snippets, start);
         }else{
             System.out.printf("%n\tYour Query '%s' didn't match any of the documents.%n%n%n", query);
         }
     }
 
+    /**
+     * Runs a query and ranks the documents matching it the same way as a query
+     * entered at the prompt, without printing anything or making snippets. The
+     * latency of each stage is recorded in the {@link QueryStats}. Safe to call
+     * from many threads at once.
+     * @param query Query to run.
+     * @return Top 5 documents and their scores, best first. Empty if none match.
+     * @throws IllegalArgumentException If the query uses the query language and is invalid.
+     */
+    public List<Pair<Integer, Double>> search(String query){
+        QueryOptions options = parseOptions(query);
+        query = options.query;
+
+        Pair<List<Term>, Set<Integer>> match;
+        Matcher phrase = PHRASE_PATTERN.matcher(query.trim());
+        if(phrase.matches()) {
+            match = matchPhrase(phrase.group(1), phrase.group(2) == null ? 0 : Integer.parseInt(phrase.group(2)));
+        }else if(QueryPlan.isStructured(query)) {
+            match = matchStructured(query);
+        }else {
+            List<Term> tokens = getQueryTokens(query, new ArrayList<>());
+            return tokens.isEmpty() ? new ArrayList<>() : rankTerms(tokens, options.scorer, options.impactMode);
+        }
+
+        if(match.b.isEmpty())
+            return new ArrayList<>();
+
+        long start = System.nanoTime();
+        List<Pair<Integer, Double>> ranked = rankDocs(match.b, match.a, options.scorer);
+        stats.record(QueryStats.Stage.Ranking, start);
+        return ranked;
+    }
+
+    /**
+     * Parses the options a query may start with, choosing its scorer and
+     * impact mode, e.g. [bm25, impact] query.
+     * @param query Query to parse.
+     * @return Options of the query.
+     */
+    private QueryOptions parseOptions(String query){
+        QueryOptions parsed = new QueryOptions();
+        Scorer.Type type = defaultScorer;
+        parsed.impactMode = defaultImpactMode;
+        parsed.query = query;
+
+        Matcher options = OPTIONS_PATTERN.matcher(query.trim());
+        if(options.matches()) {
+            for(String option : options.group(1).split(",")){
+                Scorer.Type chosen = Scorer.Type.fromName(option);
+                if(chosen != null)
+                    type = chosen;
+                else if(option.trim().equalsIgnoreCase(IMPACT_OPTION))
+                    parsed.impactMode = true;
+                else
+                    parsed.unknown.add(option.trim());
+            }
+            parsed.query = options.group(2);
+        }
+        parsed.scorer = type.getScorer();
+        LOGGER.debug("Scoring with: {} Impact mode: {}", type, parsed.impactMode);
+        return parsed;
+    }
+
+    /**
+     * Finds and ranks the documents of the Query Terms, recording
+     * the latency of each stage in the {@link QueryStats}.
+     * @param tokens Query Terms, at least one.
+     * @param scorer Scorer to rank with.
+     * @param impactMode True to rank by scanning impact tiers.
+     * @return Top 5 documents and their scores, best first.
+     */
+    private List<Pair<Integer, Double>> rankTerms(List<Term> tokens, Scorer scorer, boolean impactMode){
+        long start = System.nanoTime();
+        if(impactMode) {
+            List<Pair<Integer, Double>> ranked = rankByImpact(tokens, scorer);
+            stats.record(QueryStats.Stage.Ranking, start);
+            return ranked;
+        }
+
+        Set<Integer> relevantDocIds = getRelevantDocIds(tokens);
+        start = stats.record(QueryStats.Stage.CandidateRetrieval, start);
+        List<Pair<Integer, Double>> ranked = rankDocs(relevantDocIds, tokens, scorer);
+        stats.record(QueryStats.Stage.Ranking, start);
+        return ranked;
+    }
+
+    /**
+     * Processes a phrase query, only matching documents where the terms
+     * are found in the same order as the phrase. With a slop each term
+     * may be up to that many positions away from where the phrase places
+     * it. If the Index has no positions the terms only need to be found
+     * in the same document.
+     * @param phrase Phrase to process.
+     * @param slop Positions each term may be away from its place in the phrase.
+     * @param scorer Scorer to rank with.
+     */
+    private void processPhrase(String phrase, int slop, Scorer scorer){
+        Pair<List<Term>, Set<Integer>> match = matchPhrase(phrase, slop);
+        if(match.b.isEmpty()) {
+            System.out.printf("%n\tYour Phrase '%s' didn't match any of the documents.%n%n%n", phrase);
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Doc> top5Docs = getDocuments(rankDocs(match.b, match.a, scorer));
+        start = stats.record(QueryStats.Stage.Ranking, start);
+        printDocuments(top5Docs, match.a);
+        stats.record(QueryStats.Stage.Snippets, start);
+    }
+
+    /**
+     * Finds the documents matching a phrase, see {@link #processPhrase(String, int, Scorer)}.
+     * @param phrase Phrase to match.
+     * @param slop Positions each term may be away from its place in the phrase.
+     * @return Terms of the phrase and the IDs of the matching documents, none
+     * if a term of the phrase isn't in the Index.
+     */
+    private Pair<List<Term>, Set<Integer>> matchPhrase(String phrase, int slop){
+        LOGGER.info("Processing Phrase: {} Slop: {}", phrase, slop);
+        long start = System.nanoTime();
+        TextScanner ts = TextScanner.getInstance();
+        CoreDocument doc = ts.scan(phrase, ts.getQueryProfile());
+        Collection<Token> tokens = ts.getDocTokens(doc).values();
+        start = stats.record(QueryStats.Stage.Analysis, start);
+
+        // Each place of a term in the phrase
+        IndexLoader il = IndexLoader.getInstance();
+        List<Term> terms = new ArrayList<>();
+        List<Pair<Term, Integer>> places = new ArrayList<>();
+        boolean allFound = !tokens.isEmpty();
+        for(Token t : tokens){
+            Term term = il.getTerm(t.getToken());
+            LOGGER.trace("Term in phrase: {}. Found in Index: {}", t.getToken(), term != null);
+            if(term == null) {
+                allFound = false;
+                break;
+            }
+            terms.add(term);
+            for(int position : t.getPositions())
+                places.add(new Pair<>(term, position));
+        }
+        start = stats.record(QueryStats.Stage.TermLookup, start);
+
+        Set<Integer> docIds = new HashSet<>();
+        if(!allFound)
+            return new Pair<>(terms, docIds);
+
+        // Every term must be in the document
+        int[] matches = terms.get(0).getDocIds();
+        for(int i = 1; i < terms.size(); i++)
+            matches = intersect(matches, terms.get(i).getDocIds());
+        start = stats.record(QueryStats.Stage.CandidateRetrieval, start);
+
+        boolean hasPositions = true;
+        for(Term term : terms)
+            hasPositions &= term.hasPositions();
+
+        if(hasPositions) {
+            places.sort(Comparator.comparingInt((Pair<Term, Integer> place) -> place.b));
+            for(int docId : matches) {
+                if(containsPhrase(docId, places, slop))
+                    docIds.add(docId);
+            }
+        }else {
+            LOGGER.warn("The Index has no positions. Phrase matched as all terms in any order.");
+            for(int docId : matches)
+                docIds.add(docId);
+        }
+        stats.record(QueryStats.Stage.PhraseVerification, start);
+        LOGGER.debug("Phrase candidates: {} Verified: {}", matches.length, docIds.size());
+        return new Pair<>(terms, docIds);
+    }
+
+    /**
+     * Processes a query written in the query language. The query is compiled
+     * into a {@link QueryPlan} which is run against the postings as is, so no
+     * terms are dropped to find more documents.
+     * @param query Query to process.
+     * @param scorer Scorer to rank with.
+     */
+    private void processStructured(String query, Scorer scorer){
+        Pair<List<Term>, Set<Integer>> match;
+        try{
+            match = matchStructured(query);
+        }catch (IllegalArgumentException e){
+            LOGGER.debug("Invalid query: {}", e.getMessage());
+            System.out.printf("%n\tYour Query '%s' is invalid. %s%n%n%n", query, e.getMessage());
+            return;
+        }
+
+        if(match.b.isEmpty()) {
+            System.out.printf("%n\tYour Query '%s' didn't match any of the documents.%n%n%n", query);
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Doc> top5Docs = getDocuments(rankDocs(match.b, match.a, scorer));
+        start = stats.record(QueryStats.Stage.Ranking, start);
+        printDocuments(top5Docs, match.a);
+        stats.record(QueryStats.Stage.Snippets, start);
+    }
+
+    /**
+     * Finds the documents matching a query written in the query language.
+     * @param query Query to match.
+     * @return Terms of the query and the IDs of the matching documents.
+     * @throws IllegalArgumentException If the query is invalid.
+     */
+    private Pair<List<Term>, Set<Integer>> matchStructured(String query){
+        long start = System.nanoTime();
+        QueryPlan plan = QueryPlan.compile(query, this::analyzeWord);
+        start = stats.record(QueryStats.Stage.Analysis, start);
+        LOGGER.debug("Query plan: {}", plan.explain());
+
+        Set<Integer> docIds = new HashSet<>();
+        for(int docId : plan.execute())
+            docIds.add(docId);
+        stats.record(QueryStats.Stage.CandidateRetrieval, start);
+        return new Pair<>(plan.getTerms(), docIds);
+    }
+
+    /**
+     * Scans a single word of a structured query into Terms.
+     * @param word Word to scan.
+     * @return Term of each token of the word, null if not in the Index.
+     */
+    private List<Term> analyzeWord(String word){
+        TextScanner ts = TextScanner.getInstance();
+        CoreDocument doc = ts.scan(word, ts.getQueryProfile());
+        IndexLoader il = IndexLoader.getInstance();
+        List<Term> terms = new ArrayList<>();
+        for(Token t : ts.getDocTokens(doc).values()){
+            Term term = il.getTerm(t.getToken());
+            LOGGER.trace("Term in query: {}. Found in Index: {}", t.getToken(), term != null);
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    /**
+     * Checks the positions of the phrase terms within a document. The
+     * first term of the phrase anchors each attempt, the others needing
+     * a position within the slop of their place relative to it.
+     * @param docId ID of the document to check.
+     * @param places Terms of the phrase and their positions in it, in phrase order.
+     * @param slop Positions each term may be away from its place in the phrase.
+     * @return true if the document contains the phrase, otherwise false.
+     */
+    private boolean containsPhrase(int docId, List<Pair<Term, Integer>> places, int slop){
+        int[][] positions = new int[places.size()][];
+        for(int i = 0; i < places.size(); i++){
+            positions[i] = places.get(i).a.getPositions(docId);
+            if(positions[i] == null || positions[i].length == 0)
+                return false;
+        }
+
+        int anchor = places.get(0).b;
+        for(int start : positions[0]){
+            boolean found = true;
+            for(int i = 1; i < places.size() && found; i++){
+                int expected = start + places.get(i).b - anchor;
+                int at = Arrays.binarySearch(positions[i], expected - slop);
+                if(at < 0)
+                    at = -at - 1;
+                found = at < positions[i].length && positions[i][at] <= expected + slop;
+            }
+            if(found)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Given a Query String it is pre-processed
-     * and Terms and a list of terms provided.
+     * and Terms and a list of terms provided. Tokens
+     * missing from the Index are replaced by their
+     * spelling correction, if any.
      * @param query Query to processes.
+     * @param corrections Receives each correction made.
      * @return List of pre-processed query terms.
      */
-    private List<Term> getQueryTokens(String query){
+    private List<Term> getQueryTokens(String query, List<String> corrections){
         LOGGER.debug("Getting tokens from query.");
+        long start = System.nanoTime();
         TextScanner ts = TextScanner.getInstance();
-        CoreDocument doc = ts.scan(query);
-        Collection<Token> tokens = ts.getDocTokens(doc, ts::removeStopwords, ts::removeNonDictionaryTerms, ts::removeIllegalPatterns, ts::removeLongShortTokens).values();
+        CoreDocument doc = ts.scan(query, ts.getQueryProfile());
+        Collection<Token> tokens = ts.getDocTokens(doc).values();
+        start = stats.record(QueryStats.Stage.Analysis, start);
 
         IndexLoader il = IndexLoader.getInstance();
         List<Term> terms = new ArrayList<>();
@@ -240,11 +570,18 @@ public class SearchEngine extends Thread {
             Token t = it.next();
             it.remove();
 
-            Term term = il.getTermByHashToken(t.getHash(), t.getToken());
+            Term term = il.getTerm(t.getToken());
             LOGGER.trace("Term in query: {}. Found in Index: {}", t.getToken(), term != null);
-            if(term != null)
+            if(term == null) {
+                term = il.getCorrection(t.getToken());
+                LOGGER.debug("Correction of {}: {}", t.getToken(), term != null ? term.getToken() : "N/A");
+                if(term != null)
+                    corrections.add(String.format("%s -> %s", t.getToken(), term.getToken()));
+            }
+            if(term != null && !terms.contains(term))
                 terms.add(term);
         }
+        stats.record(QueryStats.Stage.TermLookup, start);
         return terms;
     }
 
@@ -270,14 +607,18 @@ public class SearchEngine extends Thread {
         }
 
         // Find all documents that all terms can be found in
-        Set<Integer> docIds = new HashSet<>();
+        int[] matches = new int[0];
         for(Term t : terms){
-            if (docIds.isEmpty())
-                docIds.addAll(t.getDocs());
+            if (matches.length == 0)
+                matches = t.getDocIds();
             else
-                docIds = intersectSets(docIds, t.getDocs());
+                matches = intersect(matches, t.getDocIds());
         }
 
+        Set<Integer> docIds = new HashSet<>();
+        for(int docId : matches)
+            docIds.add(docId);
+
         // Check if recursion should and can be done.
         if(docIds.size() < 50 && terms.size() >= 2){
             LOGGER.trace("Haven't found enough documents. Search a sub section of the list.");
@@ -305,33 +646,43 @@ public class SearchEngine extends Thread {
     }
 
     /**
-     * Intersects two sets. Neither set is modified.
-     * @param one Set one to intersect with set two.
-     * @param two Set two to intersect with set one.
-     * @param <T> Type of objects to intersect over.
-     * @return New set representing intersection.
+     * Intersects two sorted arrays of Document IDs. Neither array is modified.
+     * @param one Sorted IDs to intersect with two.
+     * @param two Sorted IDs to intersect with one.
+     * @return New sorted array representing intersection.
      */
-    private <T> Set<T> intersectSets(Set<T> one, Set<T> two){
-        Set<T> intersection = new HashSet<>();
-        for(T t : one){
-            if(two.contains(t))
-                intersection.add(t);
+    private int[] intersect(int[] one, int[] two){
+        int[] intersection = new int[Math.min(one.length, two.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while(i < one.length && j < two.length){
+            if(one[i] < two[j]) {
+                i++;
+            }else if(one[i] > two[j]) {
+                j++;
+            }else {
+                intersection[size++] = one[i];
+                i++;
+                j++;
+            }
         }
-        return intersection;
+        return Arrays.copyOf(intersection, size);
     }
 
     /**
      * Gathers all associated documents to the
-     * document IDs provided.
-     * @param docIds Document IDs to get documents for.
-     * @return Set of Documents found from Document IDs provided.
+     * ranked document IDs provided. Documents are only
+     * materialized here, for the ones displayed.
+     * @param ranked Ranked Document IDs to get documents for.
+     * @return Documents found from Document IDs provided, in the same order.
      */
-    private Set<Doc> getDocuments(Set<Integer> docIds){
+    private List<Doc> getDocuments(List<Pair<Integer, Double>> ranked){
         LOGGER.debug("Getting relevant documents.");
-        Set<Doc> docs = new HashSet<>();
+        List<Doc> docs = new ArrayList<>();
         IndexLoader il = IndexLoader.getInstance();
-        for(int id : docIds) {
-            Doc doc = il.getDocById(id);
+        for(Pair<Integer, Double> r : ranked) {
+            Doc doc = il.getDocById(r.a);
             docs.add(doc);
             LOGGER.trace("Found document: {}", doc.getTitle());
         }
@@ -339,68 +690,129 @@ public class SearchEngine extends Thread {
     }
 
     /**
-     * Ranks documents given a set of Documents and Query Terms.
-     * @param docs Documents to Rank.
+     * Ranks documents given a set of Document IDs and Query Terms. Terms are
+     * scored from the highest {@link Scorer#getUpperBound(Term) upper bound}
+     * down, and once the top 5 is full a document stops being scored as soon
+     * as the bounds of its remaining terms can't lift it above the 5th best.
+     * @param docIds IDs of the Documents to Rank.
      * @param tokens Query Tokens to help with ranking.
-     * @return Top 5 ranked documents. Range 0-5.
+     * @param scorer Scorer to rank with.
+     * @return Top 5 ranked documents and their scores. Range 0-5.
      */
-    private List<Doc> rankDocs(Set<Doc> docs, List<Term> tokens){
+    private List<Pair<Integer, Double>> rankDocs(Set<Integer> docIds, List<Term> tokens, Scorer scorer){
         // Tree set sorting the documents as they are added
         // Sorted in ascending order
-        TreeSet<Pair<Doc, Double>> top5 = new TreeSet<>(new Comparator<Pair<Doc, Double>>() {
-            @Override
-            public int compare(Pair<Doc, Double> o1, Pair<Doc, Double> o2) {
-                double diff = o1.b - o2.b;
-                if(diff == 0)
-                    return 0;
-                else
-                    return diff < 0 ? -1 : 1;
-            }
-        });
+        TreeSet<Pair<Integer, Double>> top5 = new TreeSet<>(RANK_ORDER);
+
+        // Order terms by upper bound, highest first, and sum the bounds left after each
+        List<Term> terms = new ArrayList<>(tokens);
+        terms.sort(Comparator.comparingDouble((Term t) -> scorer.getUpperBound(t)).reversed());
+        double[] remainingBound = new double[terms.size() + 1];
+        for(int i = terms.size() - 1; i >= 0; i--)
+            remainingBound[i] = remainingBound[i + 1] + scorer.getUpperBound(terms.get(i));
 
         // Ranked Documents
-        for(Doc doc : docs){
-            double rank = rankDocument(doc, tokens);
-            top5.add(new Pair<>(doc, rank));
-            LOGGER.debug("Ranking Document {}: {}", doc.getTitle(), rank);
+        int pruned = 0;
+        for(int docId : docIds){
+            double threshold = top5.size() == 5 ? top5.first().b : Double.NEGATIVE_INFINITY;
+            double rank = 0;
+            int i = 0;
+            while(i < terms.size() && rank + remainingBound[i] > threshold)
+                rank += scorer.score(terms.get(i++), docId);
+
+            if(i < terms.size()) {
+                pruned++;
+                continue;
+            }
+
+            top5.add(new Pair<>(docId, rank));
+            LOGGER.debug("Ranking Document {}: {}", docId, rank);
 
             if(top5.size() > 5)
                 top5.pollFirst();
         }
+        LOGGER.debug("Documents pruned from ranking: {} of {}", pruned, docIds.size());
+        return getTop5(top5);
+    }
+
+    /**
+     * Ranks the documents of any of the Query Terms by scanning impact tiers.
+     * The tier scanned next is the one with the highest bound left of any term
+     * and each new document found is fully scored. Once the top 5 is full and
+     * the bounds left of every term sum to no more than the 5th best score, no
+     * unscanned document can enter the top 5 and scanning stops. Unlike
+     * {@link #rankDocs(Set, List, Scorer)} documents don't need every term.
+     * @param tokens Query Tokens to rank documents for.
+     * @param scorer Scorer to rank with.
+     * @return Top 5 ranked documents and their scores. Range 0-5.
+     * @see Term#orderByImpact
+     */
+    private List<Pair<Integer, Double>> rankByImpact(List<Term> tokens, Scorer scorer){
+        TreeSet<Pair<Integer, Double>> top5 = new TreeSet<>(RANK_ORDER);
+        double[][] bounds = new double[tokens.size()][];
+        int[] nextTier = new int[tokens.size()];
+        for(int i = 0; i < tokens.size(); i++)
+            bounds[i] = scorer.getTierBounds(tokens.get(i));
+
+        Set<Integer> scored = new HashSet<>();
+        long scanned = 0;
+        long total = 0;
+        for(Term t : tokens)
+            total += t.numberAssociatedDocs();
+
+        while(true){
+            double threshold = top5.size() == 5 ? top5.first().b : Double.NEGATIVE_INFINITY;
+            double remaining = 0;
+            int best = -1;
+            for(int i = 0; i < tokens.size(); i++){
+                double bound = bounds[i][nextTier[i]];
+                remaining += bound;
+                if(nextTier[i] < tokens.get(i).getNumTiers() && (best < 0 || bound > bounds[best][nextTier[best]]))
+                    best = i;
+            }
+            if(best < 0 || remaining <= threshold)
+                break;
+
+            // Score each new document of the tier
+            Term term = tokens.get(best);
+            int tier = nextTier[best]++;
+            int[] docIds = term.getImpactDocIds();
+            for(int i = term.getTierStart(tier); i < term.getTierEnd(tier); i++){
+                scanned++;
+                if(!scored.add(docIds[i]))
+                    continue;
+
+                top5.add(new Pair<>(docIds[i], scorer.score(docIds[i], tokens)));
+                if(top5.size() > 5)
+                    top5.pollFirst();
+            }
+        }
+        LOGGER.debug("Impact ranking scanned {} of {} postings and scored {} documents.", scanned, total, scored.size());
+        return getTop5(top5);
+    }
 
+    /**
+     * Gets the ranked documents, best first.
+     * @param top5 Ranked documents in ascending order of score.
+     * @return Documents and their scores. Range 0-5.
+     */
+    private List<Pair<Integer, Double>> getTop5(TreeSet<Pair<Integer, Double>> top5){
         // Get top 5 Ranked Documents
         StringBuilder sb = new StringBuilder();
-        List<Doc> bestTop5 = new ArrayList<>();
+        List<Pair<Integer, Double>> bestTop5 = new ArrayList<>();
         while(!top5.isEmpty()) {
 
-            Pair<Doc, Double> first = top5.pollLast();
-            Doc d = first.a;
+            Pair<Integer, Double> first = top5.pollLast();
+            int d = first.a;
             double r = first.b;
-            sb.append(" " + d.getTitle() + " " + r);
-            bestTop5.add(d);
+            sb.append(" " + d + " " + r);
+            bestTop5.add(first);
         }
         LOGGER.debug("Top 5 Documents:{}", sb);
 
         return bestTop5;
     }
 
-    /**
-     * Ranks a given Document the query Terms provided.
-     * @param doc Document to Rank.
-     * @param terms Terms to help with ranking.
-     * @return Ranking score for the document.
-     */
-    public static double rankDocument(Doc doc, List<Term> terms){
-        double sum = 0;
-        double base  = Math.log(2);
-        for(Term t : terms) {
-            double tf = t.getDocFrequency(doc) / (double) doc.getHighestTokenFreq();
-            double idf = Math.log(IndexLoader.getInstance().getNumDocs() / (double) t.numberAssociatedDocs()) / base;
-            sum += tf * idf;
-        }
-        return sum;
-    }
-
     /**
      * Prints the retrieved set of documents to the terminal.
      * @param docs Documents to print.
@@ -436,4 +848,12 @@ public class SearchEngine extends Thread {
             System.out.println(s);
         System.out.println();
     }
+
+    /** Options a query starts with and the query left after them. */
+    private static class QueryOptions {
+        private Scorer scorer;
+        private boolean impactMode;
+        private String query;
+        private List<String> unknown = new ArrayList<>();
+    }
 }
@@ -0,0 +1,44 @@
+package cs437.bsu.search.engine.query;
+
+import cs437.bsu.search.engine.index.IndexLoader;
+import cs437.bsu.search.engine.index.Term;
+
+/**
+ * TF-IDF Scorer. The term frequency is normalized by the highest
+ * term frequency of the document and the IDF is in base 2.
+ * @author Cade Peterson
+ */
+class TfIdfScorer extends AbstractScorer {
+
+    private static final double BASE = Math.log(2);
+    /** Covers the impacts being ordered as floats rather than doubles. */
+    private static final double IMPACT_ERROR = 1e-6;
+
+    @Override
+    protected double scoreBody(Term term, int docId){
+        int freq = term.getDocFrequency(docId);
+        if(freq == 0)
+            return 0;
+
+        double tf = freq / (double) IndexLoader.getInstance().getHighestTokenFreq(docId);
+        return tf * getIdf(term);
+    }
+
+    /**
+     * The normalized term frequency is at most the highest impact of the tier,
+     * which is 1 for Terms that aren't impact ordered.
+     */
+    @Override
+    protected double getTierBodyBound(Term term, int tier){
+        return Math.min(1, term.getTierImpact(tier) * (1 + IMPACT_ERROR)) * getIdf(term);
+    }
+
+    /**
+     * Gets the IDF of a term.
+     * @param term Term of the query.
+     * @return Base 2 IDF.
+     */
+    private static double getIdf(Term term){
+        return Math.log(IndexLoader.getInstance().getNumDocs() / (double) term.numberAssociatedDocs()) / BASE;
+    }
+}
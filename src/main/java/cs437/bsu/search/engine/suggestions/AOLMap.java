@@ -1,104 +1,426 @@
 package cs437.bsu.search.engine.suggestions;
 
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import cs437.bsu.search.engine.util.TaskExecutor;
+import org.slf4j.Logger;
+
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AOLMap {
 
-    private Map<String, Set<Query>> queryLogMap;
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(AOLMap.class);
+    private static final int CACHE_MAGIC = 0x414F4C33; // AOL3
+
+    /** Property for the file the precomputed suggestions are saved to. */
+    public static final String CACHE_FILE_PROP = "aol.suggestions.cache";
+    /** Property for the number of suggestions kept per query. */
+    public static final String TOP_N_PROP = "aol.suggestions.top";
+    /** Property for the estimated memory in MB the AOL query logs may use when read. */
+    public static final String MEMORY_BUDGET_PROP = "aol.memory.budget";
+
+    private Map<String, Suggestion[]> suggestionMap;
+    private Map<String, Integer> queryWeights;
+    private Autocomplete autocomplete;
+    private volatile boolean ready;
     private File aolDir;
+    private File cacheFile;
+    private int topN;
 
 
     public AOLMap(File aolDir) {
 
         this.aolDir = aolDir;
-        this.queryLogMap = new HashMap<String, Set<Query>>();
+        this.suggestionMap = new HashMap<String, Suggestion[]>();
+        this.queryWeights = new HashMap<String, Integer>();
+        this.autocomplete = new Autocomplete(queryWeights);
+        this.cacheFile = new File(System.getProperty(CACHE_FILE_PROP, "aol-suggestions.bin"));
+        this.topN = Integer.parseInt(System.getProperty(TOP_N_PROP, "5"));
     }
 
-    public HashMap<String, Set<Query>> getMap() {
+    /**
+     * Gets the precomputed suggestions for a query. These are the queries users
+     * modified the query to within a session, ordered by the number of sessions.
+     * @param query Query to get suggestions for.
+     * @return Top suggestions, empty if none or not {@link #isReady() ready}.
+     */
+    public List<Suggestion> getSuggestions(String query) {
 
-        return (HashMap<String, Set<Query>>) queryLogMap;
+        if (!ready)
+            return Collections.emptyList();
+
+        Suggestion[] suggestions = suggestionMap.get(query);
+        return suggestions == null ? Collections.emptyList() : Arrays.asList(suggestions);
     }
 
+    /**
+     * Gets the most frequent logged queries starting with a prefix. Queries
+     * are weighted by the number of sessions they're found in.
+     * @param prefix Prefix of the query typed so far.
+     * @param k Max number of completions.
+     * @return Completions ordered by weight, empty if none or not {@link #isReady() ready}.
+     */
+    public List<Suggestion> complete(String prefix, int k) {
+
+        if (!ready)
+            return Collections.emptyList();
+
+        return autocomplete.complete(prefix, k);
+    }
+
+    /**
+     * Dictates if the suggestions have finished loading. Until then no
+     * suggestions or completions are found for any query.
+     * @return true if loaded, otherwise false.
+     */
+    public boolean isReady() {
+
+        return ready;
+    }
+
+    /**
+     * Loads the suggestions on another thread.
+     * @return Future that completes once loaded, or exceptionally if the logs failed to be read.
+     * @see #run()
+     */
+    public CompletableFuture<Void> runAsync() {
+
+        return TaskExecutor.StartAsyncTask(() -> {
+            try {
+                run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Loads the suggestions. If the suggestion cache file was made from the same
+     * AOL query logs and number of suggestions it's loaded, otherwise the logs are
+     * read, the suggestions computed, and the cache file rewritten.
+     * @throws IOException If the query log directory can't be listed or the logs fail to be read.
+     */
     public void run() throws IOException {
 
         File[] files = aolDir.listFiles();
+        if (files == null)
+            throw new IOException("Failed to list AOL query logs: " + aolDir);
+
+        if (isCacheCurrent(files)) {
+
+            try {
+                Map<String, Suggestion[]> suggestions = new HashMap<String, Suggestion[]>();
+                Map<String, Integer> weights = new HashMap<String, Integer>();
+                readCache(files, suggestions, weights);
+                publish(suggestions, weights);
+                return;
+            } catch (IOException e) {
+                LOGGER.atWarn().setCause(e).log("Failed to read suggestion cache, rebuilding it: {}", cacheFile);
+            }
+        }
+
+        Map<String, Suggestion[]> suggestions = new HashMap<String, Suggestion[]>();
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        computeSuggestions(readLogs(files), suggestions, weights);
 
-        assert files != null;
+        try {
+            writeCache(files, suggestions, weights);
+        } catch (IOException e) {
+            LOGGER.atWarn().setCause(e).log("Failed to write suggestion cache: {}", cacheFile);
+        }
+        publish(suggestions, weights);
+    }
 
-        queryLogMap = new HashMap<String, Set<Query>>();
+    /**
+     * Makes loaded suggestions available. The maps are filled on the loading thread
+     * and only assigned once complete, before the volatile {@link #ready} write, so
+     * lookups never see a map while it's being filled.
+     * @param suggestions Top suggestions of each query.
+     * @param weights Number of sessions of each query.
+     */
+    private void publish(Map<String, Suggestion[]> suggestions, Map<String, Integer> weights) {
+
+        LOGGER.info("Building autocomplete index over {} queries.", weights.size());
+        Autocomplete built = new Autocomplete(weights);
+        LOGGER.info("Autocomplete index built with {} nodes.", built.getNodeCount());
+
+        suggestionMap = suggestions;
+        queryWeights = weights;
+        autocomplete = built;
+        ready = true;
+    }
 
-        for (File f : files) {
+    /**
+     * Reads the AOL query logs, each file in parallel. Readers stop once the
+     * estimated memory of the queries read reaches the {@value #MEMORY_BUDGET_PROP}.
+     * @param files AOL query log files.
+     * @return Sessions of the logs.
+     * @throws IOException If a log fails to be read.
+     */
+    private QueryLog readLogs(File[] files) throws IOException {
+
+        LOGGER.info("Reading {} AOL query log file(s).", files.length);
+
+        AtomicLong memoryUsed = new AtomicLong();
+        long memoryBudget = Long.parseLong(System.getProperty(MEMORY_BUDGET_PROP, "0")) * 1024 * 1024;
+
+        QueryLog queryLog;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(files.length, Runtime.getRuntime().availableProcessors())));
+        try {
+
+            List<Future<LogReader>> results = new ArrayList<>();
+            for (File f : files)
+                results.add(pool.submit(new LogReader(f, memoryUsed, memoryBudget)));
+
+            List<LogReader> parts = new ArrayList<>();
+            for (Future<LogReader> result : results)
+                parts.add(result.get());
+
+            queryLog = new QueryLog(parts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading AOL query logs.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read AOL query logs.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
 
-            BufferedReader br = new BufferedReader(new FileReader(f));
+        LOGGER.info("Read {} unique queries in {} sessions from the AOL query logs.", queryLog.getNumQueries(), queryLog.getNumSessions());
+        return queryLog;
+    }
 
-            //Discard first line
-            String line = br.readLine();
-            line = br.readLine();
+    /**
+     * Computes the top suggestions for every logged query. A suggestion is a later
+     * query in the same session containing all the terms of the query, and it's
+     * counted once per session.
+     * @param queryLog Sessions of the logs.
+     * @param suggestions Receives the top suggestions of each query.
+     * @param weights Receives the number of sessions of each query.
+     */
+    private void computeSuggestions(QueryLog queryLog, Map<String, Suggestion[]> suggestions, Map<String, Integer> weights) {
 
-            int currentUID = -1;
-            int pos = 0;
+        LOGGER.info("Computing suggestions for {} queries.", queryLog.getNumQueries());
 
-            Session session = null;
-            ArrayList<String> queries = new ArrayList<String>();
+        for (int id = 0; id < queryLog.getNumQueries(); id++) {
 
-            while (line != null) {
+            String query = queryLog.getQuery(id);
+            weights.put(query, queryLog.getNumSessions(id));
 
-                String[] itemAttributes = line.split("\t");
-                int uid = Integer.parseInt(itemAttributes[0]);
-                String query = itemAttributes[1];
+            Map<Integer, Integer> qcToItsFreq = queryLog.getModifiedQueries(id);
+            if (qcToItsFreq.isEmpty())
+                continue;
 
-                if (currentUID == -1) {
+            PriorityQueue<Suggestion> ranked = new PriorityQueue<Suggestion>();
+            for (Map.Entry<Integer, Integer> qc : qcToItsFreq.entrySet())
+                ranked.add(new Suggestion(queryLog.getQuery(qc.getKey()), qc.getValue()));
 
-                    queryLogMap.put(query, new HashSet<Query>());
-                    session = new Session(uid, new ArrayList<Query>());
-                    queries = new ArrayList<String>();
+            Suggestion[] top = new Suggestion[Math.min(topN, ranked.size())];
+            for (int i = 0; i < top.length; i++)
+                top[i] = ranked.poll();
 
-                    currentUID = uid;
-                    session.getQueries().add(new Query(query, pos, session));
+            suggestions.put(query, top);
+        }
 
-                    queries.add(query);
+        LOGGER.info("Found suggestions for {} queries.", suggestions.size());
+    }
 
-                    pos++;
-                } else if (uid != currentUID) {
+    /**
+     * Dictates if the cache file was made from the current AOL query logs,
+     * with the same number of suggestions kept per query.
+     * @param files AOL query log files.
+     * @return true if the cache can be loaded, otherwise false.
+     */
+    private boolean isCacheCurrent(File[] files) {
 
-                    pos = 0;
-                    session = new Session(uid, new ArrayList<Query>());
-                    queries = new ArrayList<String>();
+        if (!cacheFile.isFile())
+            return false;
 
-                    currentUID = uid;
-                    session.getQueries().add(new Query(query, pos, session));
-                    queries.add(query);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
 
-                    if (queryLogMap.get(query) == null) {
+            return in.readInt() == CACHE_MAGIC && isHeaderCurrent(in, files);
+        } catch (IOException e) {
+            LOGGER.atWarn().setCause(e).log("Failed to read suggestion cache header: {}", cacheFile);
+            return false;
+        }
+    }
 
-                        queryLogMap.put(query, new HashSet<Query>());
-                    }
+    /**
+     * Writes what the suggestions were computed from: the number kept per
+     * query and the path, size, and modified time of each AOL query log.
+     * @param out Stream to write to.
+     * @param files AOL query log files.
+     * @throws IOException If writing fails.
+     */
+    private void writeHeader(DataOutputStream out, File[] files) throws IOException {
+
+        out.writeInt(topN);
+        File[] sorted = sortByPath(files);
+        out.writeInt(sorted.length);
+        for (File f : sorted) {
+
+            out.writeUTF(f.getAbsolutePath());
+            out.writeLong(f.length());
+            out.writeLong(f.lastModified());
+        }
+    }
 
-                    queryLogMap.get(query).add(new Query(query, pos, session));
-                    pos++;
+    /**
+     * Checks a header written by {@link #writeHeader(DataOutputStream, File[])}
+     * against the current number of suggestions and AOL query logs.
+     * @param in Stream to read from.
+     * @param files AOL query log files.
+     * @return true if the header matches, otherwise false.
+     * @throws IOException If reading fails.
+     */
+    private boolean isHeaderCurrent(DataInputStream in, File[] files) throws IOException {
 
-                } else {
+        if (in.readInt() != topN) {
 
-                    if (!queries.contains(query)) {
+            LOGGER.info("Suggestion cache was made with a different {}.", TOP_N_PROP);
+            return false;
+        }
 
-                        session.getQueries().add(new Query(query, pos, session));
-                        queries.add(query);
+        File[] sorted = sortByPath(files);
+        if (in.readInt() != sorted.length) {
 
-                        if (queryLogMap.get(query) == null) {
+            LOGGER.info("Suggestion cache was made from a different number of AOL query logs.");
+            return false;
+        }
 
-                            queryLogMap.put(query, new HashSet<Query>());
-                        }
+        for (File f : sorted) {
 
-                        queryLogMap.get(query).add(new Query(query, pos, session));
-                        pos++;
-                    }
-                }
+            String path = in.readUTF();
+            long length = in.readLong();
+            long modified = in.readLong();
+            if (!path.equals(f.getAbsolutePath()) || length != f.length() || modified != f.lastModified()) {
 
-                line = br.readLine();
+                LOGGER.info("Suggestion cache is older than: {}", f);
+                return false;
             }
+        }
+        return true;
+    }
 
-            br.close();
+    private static File[] sortByPath(File[] files) {
+
+        File[] sorted = files.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void readCache(File[] files, Map<String, Suggestion[]> suggestions, Map<String, Integer> weights) throws IOException {
+
+        LOGGER.info("Loading suggestions from cache: {}", cacheFile);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+
+            if (in.readInt() != CACHE_MAGIC)
+                throw new IOException("Not a suggestion cache file.");
+            if (!isHeaderCurrent(in, files))
+                throw new IOException("Suggestion cache changed while loading.");
+
+            readFrom(in, suggestions, weights);
+        }
+        LOGGER.info("Loaded suggestions for {} queries.", suggestions.size());
+    }
+
+    /**
+     * Writes the cache file. It's written to a temporary file then moved into
+     * place, so a failed write never leaves a partial cache behind.
+     * @param files AOL query log files the suggestions were computed from.
+     * @param suggestions Top suggestions of each query.
+     * @param weights Number of sessions of each query.
+     * @throws IOException If writing fails.
+     */
+    private void writeCache(File[] files, Map<String, Suggestion[]> suggestions, Map<String, Integer> weights) throws IOException {
+
+        LOGGER.info("Saving suggestions to cache: {}", cacheFile);
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+            out.writeInt(CACHE_MAGIC);
+            writeHeader(out, files);
+            write(out, suggestions, weights);
+        }
+        Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the loaded suggestions and query weights to a stream.
+     * @param out Stream to write to.
+     * @throws IOException If writing fails.
+     * @see #restore(DataInputStream)
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+
+        write(out, suggestionMap, queryWeights);
+    }
+
+    private static void write(DataOutputStream out, Map<String, Suggestion[]> suggestions, Map<String, Integer> weights) throws IOException {
+
+        out.writeInt(suggestions.size());
+        for (Map.Entry<String, Suggestion[]> entry : suggestions.entrySet()) {
+
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            for (Suggestion sugg : entry.getValue()) {
+
+                out.writeUTF(sugg.getKey());
+                out.writeInt(sugg.getFreq());
+            }
         }
+
+        out.writeInt(weights.size());
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Restores suggestions written by {@link #writeTo(DataOutputStream)}
+     * instead of reading the AOL query logs.
+     * @param in Stream to read from.
+     * @throws IOException If reading fails.
+     */
+    public void restore(DataInputStream in) throws IOException {
+
+        Map<String, Suggestion[]> suggestions = new HashMap<String, Suggestion[]>();
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        readFrom(in, suggestions, weights);
+        publish(suggestions, weights);
+    }
+
+    private static void readFrom(DataInputStream in, Map<String, Suggestion[]> suggestions, Map<String, Integer> weights) throws IOException {
+
+        int numQueries = in.readInt();
+        for (int i = 0; i < numQueries; i++) {
+
+            String query = in.readUTF();
+            Suggestion[] top = new Suggestion[in.readInt()];
+            for (int j = 0; j < top.length; j++)
+                top[j] = new Suggestion(in.readUTF(), in.readInt());
+
+            suggestions.put(query, top);
+        }
+
+        int numWeights = in.readInt();
+        for (int i = 0; i < numWeights; i++)
+            weights.put(in.readUTF(), in.readInt());
+    }
+
+    /**
+     * Gets the AOL query log files.
+     * @return Log files.
+     */
+    public File[] getLogFiles() {
+
+        File[] files = aolDir.listFiles();
+        return files == null ? new File[0] : files;
     }
 }
@@ -0,0 +1,236 @@
+package cs437.bsu.search.engine.suggestions;
+
+import java.util.*;
+
+/**
+ * Type-ahead index over logged queries. The queries are stored in a ternary
+ * search tree that is kept in flat arrays rather than node objects. Each node
+ * also holds the highest weight found in its subtree, so the top completions
+ * of a prefix are found best-first without visiting every query under it.
+ */
+public class Autocomplete {
+
+    private char[] chars;
+    private int[] lo;
+    private int[] eq;
+    private int[] hi;
+    private int[] weight;
+    private int[] best;
+    private int size;
+
+    /**
+     * Creates the index. The queries are inserted in a balanced order
+     * so the tree depth stays close to optimal.
+     * @param weights Queries and their weights, such as the number of sessions they're found in.
+     */
+    public Autocomplete(Map<String, Integer> weights) {
+
+        String[] queries = weights.keySet().toArray(new String[0]);
+        Arrays.sort(queries);
+
+        int capacity = Math.max(16, queries.length * 2);
+        chars = new char[capacity];
+        lo = new int[capacity];
+        eq = new int[capacity];
+        hi = new int[capacity];
+        weight = new int[capacity];
+        best = new int[capacity];
+        size = 1; // Node 0 is the empty tree
+
+        insertBalanced(queries, weights, 0, queries.length - 1);
+        trim();
+        computeBest();
+    }
+
+    /**
+     * Finds the top weighted queries starting with a prefix.
+     * @param prefix Prefix typed so far.
+     * @param k Max number of completions.
+     * @return Completions ordered by weight, highest first.
+     */
+    public List<Suggestion> complete(String prefix, int k) {
+
+        List<Suggestion> completions = new ArrayList<Suggestion>(k);
+        if (prefix.isEmpty() || k <= 0)
+            return completions;
+
+        int node = find(prefix);
+        if (node == 0)
+            return completions;
+
+        // Entries are either a completed query (node < 0) or a subtree to
+        // expand, ordered by the best weight they can lead to.
+        PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+        if (weight[node] > 0)
+            queue.add(new Entry(-1, prefix, weight[node]));
+        if (eq[node] != 0)
+            queue.add(new Entry(eq[node], prefix, best[eq[node]]));
+
+        while (!queue.isEmpty() && completions.size() < k) {
+
+            Entry e = queue.poll();
+            if (e.node < 0) {
+
+                completions.add(new Suggestion(e.prefix, e.bound));
+                continue;
+            }
+
+            int n = e.node;
+            String withChar = e.prefix + chars[n];
+            if (weight[n] > 0)
+                queue.add(new Entry(-1, withChar, weight[n]));
+            if (lo[n] != 0)
+                queue.add(new Entry(lo[n], e.prefix, best[lo[n]]));
+            if (hi[n] != 0)
+                queue.add(new Entry(hi[n], e.prefix, best[hi[n]]));
+            if (eq[n] != 0)
+                queue.add(new Entry(eq[n], withChar, best[eq[n]]));
+        }
+
+        return completions;
+    }
+
+    /**
+     * Number of nodes in the tree.
+     * @return Node count.
+     */
+    public int getNodeCount() {
+
+        return size - 1;
+    }
+
+    /**
+     * Finds the node matching the last character of a string.
+     * @param s String to find.
+     * @return Node index or 0 if not found.
+     */
+    private int find(String s) {
+
+        int node = 1;
+        int i = 0;
+        while (node != 0 && node < size) {
+
+            char c = s.charAt(i);
+            if (c < chars[node]) {
+                node = lo[node];
+            } else if (c > chars[node]) {
+                node = hi[node];
+            } else if (++i == s.length()) {
+                return node;
+            } else {
+                node = eq[node];
+            }
+        }
+        return 0;
+    }
+
+    private void insertBalanced(String[] queries, Map<String, Integer> weights, int start, int end) {
+
+        if (start > end)
+            return;
+
+        int mid = (start + end) >>> 1;
+        insert(queries[mid], weights.get(queries[mid]));
+        insertBalanced(queries, weights, start, mid - 1);
+        insertBalanced(queries, weights, mid + 1, end);
+    }
+
+    private void insert(String s, int w) {
+
+        if (s.isEmpty())
+            return;
+
+        if (size == 1)
+            newNode(s.charAt(0));
+
+        int node = 1;
+        int i = 0;
+        while (true) {
+
+            // Children are created before being linked as
+            // creating a node might grow the arrays.
+            char c = s.charAt(i);
+            if (c < chars[node]) {
+                if (lo[node] == 0) {
+                    int child = newNode(c);
+                    lo[node] = child;
+                }
+                node = lo[node];
+            } else if (c > chars[node]) {
+                if (hi[node] == 0) {
+                    int child = newNode(c);
+                    hi[node] = child;
+                }
+                node = hi[node];
+            } else if (++i == s.length()) {
+                weight[node] = Math.max(weight[node], Math.max(w, 1));
+                return;
+            } else {
+                if (eq[node] == 0) {
+                    int child = newNode(s.charAt(i));
+                    eq[node] = child;
+                }
+                node = eq[node];
+            }
+        }
+    }
+
+    private int newNode(char c) {
+
+        if (size == chars.length) {
+
+            int capacity = chars.length * 2;
+            chars = Arrays.copyOf(chars, capacity);
+            lo = Arrays.copyOf(lo, capacity);
+            eq = Arrays.copyOf(eq, capacity);
+            hi = Arrays.copyOf(hi, capacity);
+            weight = Arrays.copyOf(weight, capacity);
+            best = Arrays.copyOf(best, capacity);
+        }
+
+        chars[size] = c;
+        return size++;
+    }
+
+    private void trim() {
+
+        chars = Arrays.copyOf(chars, size);
+        lo = Arrays.copyOf(lo, size);
+        eq = Arrays.copyOf(eq, size);
+        hi = Arrays.copyOf(hi, size);
+        weight = Arrays.copyOf(weight, size);
+        best = Arrays.copyOf(best, size);
+    }
+
+    /**
+     * Computes the best weight of each subtree. Children are always
+     * created after their parent so a reverse pass visits them first.
+     */
+    private void computeBest() {
+
+        for (int n = size - 1; n > 0; n--)
+            best[n] = Math.max(weight[n], Math.max(best[lo[n]], Math.max(best[eq[n]], best[hi[n]])));
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        int node;
+        String prefix;
+        int bound;
+
+        Entry(int node, String prefix, int bound) {
+
+            this.node = node;
+            this.prefix = prefix;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int diff = Integer.compare(o.bound, bound);
+            if (diff == 0)
+                diff = Boolean.compare(node >= 0, o.node >= 0); // Completed queries first
+            return diff;
+        }
+    }
+}
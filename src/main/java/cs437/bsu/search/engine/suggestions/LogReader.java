@@ -0,0 +1,177 @@
+package cs437.bsu.search.engine.suggestions;
+
+import cs437.bsu.search.engine.container.IntList;
+import cs437.bsu.search.engine.util.LoggerInitializer;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads one AOL query log file. The file is parsed a block of bytes at a time,
+ * splitting each line on its first two tabs without creating a String per line,
+ * and only the user id and query columns are decoded.
+ * <p>
+ * Consecutive lines with the same user id form a session. A query is only kept
+ * the first time it's found in a session. Queries are given ids local to the file
+ * and sessions are kept as runs of those ids, see {@link QueryLog}.
+ */
+class LogReader implements Callable<LogReader> {
+
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(LogReader.class);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Rough heap cost of keeping a new unique query, not counting its characters. */
+    private static final int QUERY_OVERHEAD = 96;
+
+    private File file;
+    private AtomicLong memoryUsed;
+    private long memoryBudget;
+
+    /** Unique queries of the file, their index being their id. */
+    List<String> queries;
+    /** Query ids of every session one after another. */
+    IntList sessionQueries;
+    /** Start of each session in {@link #sessionQueries}. */
+    IntList sessionStart;
+
+    private Map<String, Integer> queryIds;
+    private Set<String> currentSession;
+    private int currentUID;
+    private boolean overBudget;
+
+    /**
+     * Creates a reader for a log file.
+     * @param file AOL query log file.
+     * @param memoryUsed Estimated memory used by all readers so far.
+     * @param memoryBudget Estimated memory all readers may use, 0 for no limit.
+     */
+    LogReader(File file, AtomicLong memoryUsed, long memoryBudget) {
+
+        this.file = file;
+        this.memoryUsed = memoryUsed;
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public LogReader call() throws IOException {
+
+        LOGGER.debug("Reading AOL query log: {}", file);
+        queries = new ArrayList<String>();
+        sessionQueries = new IntList(1024);
+        sessionStart = new IntList(256);
+        queryIds = new HashMap<String, Integer>();
+        currentSession = new HashSet<String>();
+        currentUID = -1;
+        overBudget = false;
+
+        try (InputStream in = new FileInputStream(file)) {
+
+            byte[] buf = new byte[BUFFER_SIZE];
+            int len = 0;
+            int scanned = 0;
+            boolean header = true;
+
+            int read;
+            while (!overBudget && (read = in.read(buf, len, buf.length - len)) > 0) {
+
+                len += read;
+                int lineStart = 0;
+                for (int i = scanned; i < len && !overBudget; i++) {
+
+                    if (buf[i] == '\n') {
+
+                        if (header)
+                            header = false;
+                        else
+                            parseLine(buf, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+
+                // Move the partial line to the front for the next block
+                len -= lineStart;
+                System.arraycopy(buf, lineStart, buf, 0, len);
+                scanned = len;
+                if (len == buf.length)
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            if (len > 0 && !header && !overBudget)
+                parseLine(buf, 0, len);
+        }
+
+        if (overBudget)
+            LOGGER.warn("AOL memory budget reached. Skipped the rest of: {}", file);
+
+        // Only the ids are needed from here on
+        queryIds = null;
+        currentSession = null;
+        return this;
+    }
+
+    /**
+     * Parses a line of the log.
+     * @param buf Bytes holding the line.
+     * @param start Start of the line.
+     * @param end End of the line, exclusive.
+     */
+    private void parseLine(byte[] buf, int start, int end) {
+
+        if (end > start && buf[end - 1] == '\r')
+            end--;
+
+        int uid = 0;
+        int i = start;
+        for (; i < end && buf[i] != '\t'; i++) {
+
+            byte b = buf[i];
+            if (b < '0' || b > '9')
+                return;
+            uid = uid * 10 + (b - '0');
+        }
+
+        int queryStart = ++i;
+        while (i < end && buf[i] != '\t')
+            i++;
+
+        if (queryStart >= i || queryStart == start + 1)
+            return;
+
+        addQuery(uid, new String(buf, queryStart, i - queryStart, StandardCharsets.UTF_8));
+    }
+
+    private void addQuery(int uid, String query) {
+
+        if (uid != currentUID) {
+
+            currentUID = uid;
+            currentSession.clear();
+        }
+
+        if (!currentSession.add(query))
+            return;
+
+        Integer id = queryIds.get(query);
+        long cost = id == null ? QUERY_OVERHEAD + 2L * query.length() + Integer.BYTES : Integer.BYTES;
+        if (memoryBudget > 0 && memoryUsed.addAndGet(cost) > memoryBudget) {
+
+            overBudget = true;
+            return;
+        }
+
+        if (id == null) {
+
+            id = queries.size();
+            queries.add(query);
+            queryIds.put(query, id);
+        }
+
+        if (currentSession.size() == 1)
+            sessionStart.add(sessionQueries.size());
+        sessionQueries.add(id);
+    }
+}
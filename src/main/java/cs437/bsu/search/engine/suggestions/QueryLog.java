@@ -0,0 +1,206 @@
+package cs437.bsu.search.engine.suggestions;
+
+import cs437.bsu.search.engine.container.IntList;
+
+import java.util.*;
+
+/**
+ * Compact storage of the AOL query log sessions. Every unique query string is
+ * kept once in a table and referred to by its id. Sessions are runs of query ids
+ * in one flat array and the terms of each query are a sorted run of term ids,
+ * so no object is kept per session or per query found in a session.
+ */
+public class QueryLog {
+
+    private String[] queries;
+    private int[] termStart;
+    private int[] termIds;
+    private int[] sessionStart;
+    private int[] sessionQueries;
+    private int[] occurrenceStart;
+    private int[] occurrences;
+
+    /**
+     * Creates the log by merging the sessions read from each log file.
+     * @param parts Sessions read from each file.
+     */
+    public QueryLog(List<LogReader> parts) {
+
+        Map<String, Integer> queryIds = new HashMap<String, Integer>();
+        List<String> queryTable = new ArrayList<String>();
+        IntList sessions = new IntList();
+        IntList starts = new IntList();
+
+        for (LogReader part : parts) {
+
+            // Maps the ids local to the file to ids of the whole log
+            int[] globalIds = new int[part.queries.size()];
+            for (int i = 0; i < globalIds.length; i++) {
+
+                String query = part.queries.get(i);
+                Integer id = queryIds.putIfAbsent(query, queryTable.size());
+                if (id == null) {
+                    id = queryTable.size();
+                    queryTable.add(query);
+                }
+                globalIds[i] = id;
+            }
+
+            IntList partStarts = part.sessionStart;
+            IntList partSessions = part.sessionQueries;
+            for (int s = 0; s < partStarts.size(); s++) {
+
+                starts.add(sessions.size());
+                int end = s + 1 < partStarts.size() ? partStarts.get(s + 1) : partSessions.size();
+                for (int i = partStarts.get(s); i < end; i++)
+                    sessions.add(globalIds[partSessions.get(i)]);
+            }
+        }
+        starts.add(sessions.size());
+
+        this.queries = queryTable.toArray(new String[0]);
+        this.sessionStart = starts.toArray();
+        this.sessionQueries = sessions.toArray();
+        indexTerms();
+        indexOccurrences();
+    }
+
+    /**
+     * Number of unique queries.
+     * @return Unique query count.
+     */
+    public int getNumQueries() {
+
+        return queries.length;
+    }
+
+    /**
+     * Number of sessions.
+     * @return Session count.
+     */
+    public int getNumSessions() {
+
+        return sessionStart.length - 1;
+    }
+
+    /**
+     * Gets a query string.
+     * @param id Query id.
+     * @return Query string.
+     */
+    public String getQuery(int id) {
+
+        return queries[id];
+    }
+
+    /**
+     * Number of sessions a query is found in.
+     * @param id Query id.
+     * @return Session count.
+     */
+    public int getNumSessions(int id) {
+
+        return occurrenceStart[id + 1] - occurrenceStart[id];
+    }
+
+    /**
+     * Counts the queries a query was modified to. A modification is a later query
+     * in the same session containing all the terms of the query. Each is counted
+     * once per session.
+     * @param id Query id.
+     * @return Modified query ids to the number of sessions they're found in.
+     */
+    public Map<Integer, Integer> getModifiedQueries(int id) {
+
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (int o = occurrenceStart[id]; o < occurrenceStart[id + 1]; o++) {
+
+            int pos = occurrences[o];
+            int end = sessionStart[sessionOf(pos) + 1];
+            for (int i = pos + 1; i < end; i++) {
+
+                int qc = sessionQueries[i];
+                if (containsTerms(qc, id))
+                    counts.merge(qc, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Checks if a query contains all terms of another.
+     * Both term runs are sorted so this is a merge.
+     * @param id Query to check.
+     * @param other Query whose terms must be found.
+     * @return true if all terms are found, otherwise false.
+     */
+    private boolean containsTerms(int id, int other) {
+
+        int i = termStart[id];
+        int iEnd = termStart[id + 1];
+        for (int j = termStart[other]; j < termStart[other + 1]; j++) {
+
+            int term = termIds[j];
+            while (i < iEnd && termIds[i] < term)
+                i++;
+            if (i == iEnd || termIds[i] != term)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the session holding a position of the flat session array.
+     * @param pos Position in the session array.
+     * @return Session index.
+     */
+    private int sessionOf(int pos) {
+
+        int s = Arrays.binarySearch(sessionStart, pos);
+        if (s < 0)
+            return -s - 2;
+
+        // Skip past empty sessions sharing the same start
+        while (sessionStart[s + 1] == pos)
+            s++;
+        return s;
+    }
+
+    private void indexTerms() {
+
+        Map<String, Integer> termTable = new HashMap<String, Integer>();
+        IntList ids = new IntList(queries.length * 2);
+        termStart = new int[queries.length + 1];
+
+        for (int q = 0; q < queries.length; q++) {
+
+            termStart[q] = ids.size();
+            String[] parts = queries[q].split("\\s+");
+            int[] terms = new int[parts.length];
+            for (int i = 0; i < parts.length; i++)
+                terms[i] = termTable.computeIfAbsent(parts[i], (String k) -> termTable.size());
+
+            Arrays.sort(terms);
+            for (int i = 0; i < terms.length; i++) {
+                if (i == 0 || terms[i] != terms[i - 1])
+                    ids.add(terms[i]);
+            }
+        }
+        termStart[queries.length] = ids.size();
+        termIds = ids.toArray();
+    }
+
+    private void indexOccurrences() {
+
+        occurrenceStart = new int[queries.length + 1];
+        for (int id : sessionQueries)
+            occurrenceStart[id + 1]++;
+        for (int q = 0; q < queries.length; q++)
+            occurrenceStart[q + 1] += occurrenceStart[q];
+
+        occurrences = new int[sessionQueries.length];
+        int[] next = Arrays.copyOf(occurrenceStart, queries.length);
+        for (int pos = 0; pos < sessionQueries.length; pos++)
+            occurrences[next[sessionQueries[pos]]++] = pos;
+    }
+}
@@ -0,0 +1,137 @@
+package cs437.bsu.search.engine.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of recorded durations in the style of an HDR histogram. Values below
+ * {@value #LINEAR_BUCKETS} are counted exactly and larger values are counted in
+ * log-linear buckets of {@value #SUB_BUCKETS} per power of two, so any recorded
+ * value is reported within 1% of its true value while only a fixed array of
+ * counts is kept. Recording is lock free and safe from any thread.
+ * @author Cade Peterson
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    private static final int NUM_BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private AtomicLongArray counts;
+    private AtomicLong count;
+    private AtomicLong sum;
+    private AtomicLong max;
+
+    /** Creates an empty histogram. */
+    public LatencyHistogram(){
+        counts = new AtomicLongArray(NUM_BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a value.
+     * @param value Value to record, such as a duration in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long value){
+        value = Math.max(value, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Gets the number of values recorded.
+     * @return Value count.
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     * @return Mean or 0 if none recorded.
+     */
+    public double getMean(){
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n;
+    }
+
+    /**
+     * Gets the sum of the values recorded.
+     * @return Total of all values.
+     */
+    public long getTotal(){
+        return sum.get();
+    }
+
+    /**
+     * Gets the largest value recorded.
+     * @return Max value or 0 if none recorded.
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Gets the value at a percentile. The value reported is the
+     * highest value counted in the same bucket, capped at the max.
+     * @param percentile Percentile from 0-100.
+     * @return Value at the percentile or 0 if none recorded.
+     */
+    public long getPercentile(double percentile){
+        long n = count.get();
+        if(n == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for(int bucket = 0; bucket < NUM_BUCKETS; bucket++){
+            seen += counts.get(bucket);
+            if(seen >= target)
+                return Math.min(highestValueOf(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    /** Clears all recorded values. */
+    public void reset(){
+        for(int bucket = 0; bucket < NUM_BUCKETS; bucket++)
+            counts.set(bucket, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Finds the bucket counting a value.
+     * @param value Value to count.
+     * @return Bucket index.
+     */
+    private static int bucketOf(long value){
+        if(value < LINEAR_BUCKETS)
+            return (int) value;
+
+        // Shift so the value keeps its top 8 bits, its top bit being implied
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the highest value counted by a bucket.
+     * @param bucket Bucket index.
+     * @return Highest value of the bucket.
+     */
+    private static long highestValueOf(int bucket){
+        if(bucket < LINEAR_BUCKETS)
+            return bucket;
+
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,39 @@
+package cs437.bsu.search.engine.util;
+
+import org.slf4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Utility Class used to expose metrics through JMX.
+ * @author Cade Peterson
+ */
+public class Management {
+
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(Management.class);
+
+    /** Domain of every MBean registered by the application. */
+    public static final String DOMAIN = "cs437.bsu.search.engine";
+
+    /**
+     * Registers an MBean with the platform MBean server, replacing any
+     * already registered with the same type. Failing to register is
+     * logged and doesn't stop the application.
+     * @param mbean MBean to register.
+     * @param type Type name the MBean is found under in the {@link #DOMAIN}.
+     */
+    public static void register(Object mbean, String type){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+            if(server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(mbean, name);
+            LOGGER.debug("Registered MBean: {}", name);
+        }catch (Exception e){
+            LOGGER.atWarn().setCause(e).log("Failed to register MBean: {}", type);
+        }
+    }
+}
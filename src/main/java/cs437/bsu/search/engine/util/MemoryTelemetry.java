@@ -0,0 +1,198 @@
+package cs437.bsu.search.engine.util;
+
+import org.slf4j.Logger;
+
+import java.lang.management.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * JVM memory telemetry read from the platform MXBeans: heap usage by pool,
+ * garbage collection counts and pause totals, and the allocation rate. No
+ * collections are ever triggered to take a reading. Structures such as the
+ * loaded Index can register an estimator of the memory they use so it's
+ * reported alongside. This class is a Singleton.
+ * @author Cade Peterson
+ */
+public class MemoryTelemetry implements MemoryTelemetryMXBean {
+
+    private static MemoryTelemetry INSTANCE;
+    private static Logger LOGGER = LoggerInitializer.getInstance().getSimpleLogger(MemoryTelemetry.class);
+
+    /**
+     * Gets this classes instance. The instance is registered
+     * with JMX when first created.
+     * @return Class Instance.
+     */
+    public static synchronized MemoryTelemetry getInstance(){
+        if(INSTANCE == null) {
+            INSTANCE = new MemoryTelemetry();
+            Management.register(INSTANCE, "MemoryTelemetry");
+        }
+        return INSTANCE;
+    }
+
+    private MemoryMXBean memory;
+    private Map<String, Supplier<Long>> estimators;
+    private long lastAllocated;
+    private long lastSampleNanos;
+    private volatile double allocationRate;
+
+    /** Sets up the telemetry. */
+    private MemoryTelemetry(){
+        memory = ManagementFactory.getMemoryMXBean();
+        estimators = new ConcurrentHashMap<>();
+        lastAllocated = getAllocatedBytes();
+        lastSampleNanos = System.nanoTime();
+        allocationRate = -1;
+    }
+
+    /**
+     * Starts a task logging the memory report at debug level
+     * until the application is done.
+     * @param intervalMillis Milliseconds between reports.
+     * @param done Dictates when the application is done.
+     */
+    public void startLogging(long intervalMillis, Supplier<Boolean> done){
+        if(!LOGGER.isDebugEnabled()) {
+            LOGGER.info("Debug is not enabled for this logger therefore no JVM Memory Task will be started.");
+            return;
+        }
+
+        TaskExecutor.StartTask(() -> {
+            while (!done.get()) {
+                sample();
+                LOGGER.debug(getReport());
+                TaskExecutor.sleep(intervalMillis);
+            }
+        }, () -> {});
+    }
+
+    /**
+     * Registers an estimator of the memory a structure uses.
+     * @param structure Name of the structure.
+     * @param bytes Supplies the estimated bytes used.
+     */
+    public void addEstimator(String structure, Supplier<Long> bytes){
+        estimators.put(structure, bytes);
+    }
+
+    /**
+     * Takes a sample to update the allocation rate. Rates are
+     * computed between consecutive samples.
+     */
+    public synchronized void sample(){
+        long allocated = getAllocatedBytes();
+        long now = System.nanoTime();
+        if(allocated >= 0 && lastAllocated >= 0 && now > lastSampleNanos)
+            allocationRate = Math.max(allocated - lastAllocated, 0) / ((now - lastSampleNanos) / 1_000_000_000d);
+        lastAllocated = allocated;
+        lastSampleNanos = now;
+    }
+
+    @Override
+    public long getHeapUsed(){
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getHeapMax(){
+        return memory.getHeapMemoryUsage().getMax();
+    }
+
+    @Override
+    public double getHeapUsedPercentage(){
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        return heap.getUsed() * 100d / max;
+    }
+
+    @Override
+    public Map<String, Long> getHeapPoolsUsed(){
+        Map<String, Long> pools = new TreeMap<>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.put(pool.getName(), pool.getUsage().getUsed());
+        }
+        return pools;
+    }
+
+    @Override
+    public Map<String, Long> getGcCounts(){
+        Map<String, Long> counts = new TreeMap<>();
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            counts.put(gc.getName(), gc.getCollectionCount());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getGcMillis(){
+        Map<String, Long> millis = new TreeMap<>();
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis.put(gc.getName(), gc.getCollectionTime());
+        return millis;
+    }
+
+    @Override
+    public double getAllocationRate(){
+        return allocationRate;
+    }
+
+    @Override
+    public Map<String, Long> getStructureEstimates(){
+        Map<String, Long> estimates = new TreeMap<>();
+        for(Map.Entry<String, Supplier<Long>> estimator : estimators.entrySet())
+            estimates.put(estimator.getKey(), estimator.getValue().get());
+        return estimates;
+    }
+
+    @Override
+    public String getReport(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Heap: %s/%s (%05.2f%%). Pools:", toMB(getHeapUsed()), toMB(getHeapMax()), getHeapUsedPercentage()));
+        for(Map.Entry<String, Long> pool : getHeapPoolsUsed().entrySet())
+            sb.append(String.format(" %s=%s", pool.getKey(), toMB(pool.getValue())));
+
+        sb.append(". GC:");
+        Map<String, Long> millis = getGcMillis();
+        for(Map.Entry<String, Long> gc : getGcCounts().entrySet())
+            sb.append(String.format(" %s=%d/%dms", gc.getKey(), gc.getValue(), millis.get(gc.getKey())));
+
+        double rate = getAllocationRate();
+        sb.append(String.format(". Allocation: %s/s", rate < 0 ? "N/A" : toMB((long) rate)));
+
+        Map<String, Long> estimates = getStructureEstimates();
+        if(!estimates.isEmpty()) {
+            sb.append(". Structures:");
+            for(Map.Entry<String, Long> estimate : estimates.entrySet())
+                sb.append(String.format(" %s=%s", estimate.getKey(), toMB(estimate.getValue())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the bytes allocated so far by all live threads. Memory
+     * allocated by threads that have ended isn't counted.
+     * @return Bytes allocated or -1 if the JVM doesn't support it.
+     */
+    private static long getAllocatedBytes(){
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if(!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+            return -1;
+
+        long total = 0;
+        for(long allocated : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            total += Math.max(allocated, 0);
+        return total;
+    }
+
+    private static String toMB(long bytes){
+        return bytes < 0 ? "N/A" : String.format("%.1fMB", bytes / (1024d * 1024d));
+    }
+}
@@ -0,0 +1,64 @@
+package cs437.bsu.search.engine.util;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link MemoryTelemetry}.
+ * @author Cade Peterson
+ */
+public interface MemoryTelemetryMXBean {
+
+    /**
+     * Gets the heap currently used.
+     * @return Bytes used.
+     */
+    long getHeapUsed();
+
+    /**
+     * Gets the max heap the JVM may use.
+     * @return Bytes or -1 if undefined.
+     */
+    long getHeapMax();
+
+    /**
+     * Gets the percentage of the max heap currently used.
+     * @return Percentage from 0-100.
+     */
+    double getHeapUsedPercentage();
+
+    /**
+     * Gets the memory used by each heap pool.
+     * @return Pool name to bytes used.
+     */
+    Map<String, Long> getHeapPoolsUsed();
+
+    /**
+     * Gets the number of collections run by each garbage collector.
+     * @return Collector name to collection count.
+     */
+    Map<String, Long> getGcCounts();
+
+    /**
+     * Gets the total time spent collecting by each garbage collector.
+     * @return Collector name to milliseconds.
+     */
+    Map<String, Long> getGcMillis();
+
+    /**
+     * Gets the rate memory was allocated at between the last two samples.
+     * @return Bytes per second or -1 if unavailable.
+     */
+    double getAllocationRate();
+
+    /**
+     * Gets the estimated memory used by each registered structure.
+     * @return Structure name to bytes.
+     */
+    Map<String, Long> getStructureEstimates();
+
+    /**
+     * Gets the line that is logged periodically.
+     * @return Memory report.
+     */
+    String getReport();
+}
@@ -2,6 +2,8 @@ package cs437.bsu.search.engine.util;
 
 import org.slf4j.Logger;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Utility Class used to start threaded tasks or dealing with threads.
  * @author Cade Peterson
@@ -30,6 +32,17 @@ public class TaskExecutor {
         t.start();
     }
 
+    /**
+     * Starts a Task on its own thread like {@link #StartTask(Runnable, Runnable)}
+     * however a future is returned that completes once the task is done, or
+     * completes exceptionally if the task throws.
+     * @param task Task to preform.
+     * @return Future of the task.
+     */
+    public static CompletableFuture<Void> StartAsyncTask(Runnable task){
+        return CompletableFuture.runAsync(task, (Runnable r) -> StartTask(r, () -> {}));
+    }
+
     /**
      * Makes the current thread invoking
      * this method to sleep x milliseconds.
@@ -0,0 +1,71 @@
+package cs437.bsu.search.engine.corpus;
+
+import edu.stanford.nlp.pipeline.CoreDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the summary kept for snippets is cut from the text CoreNLP scanned, which
+ * the token offsets point into. Characters that aren't ASCII are made longer when
+ * the text is normalized, so the body here is full of them.
+ * @author Cade Peterson
+ */
+class DocumentTest {
+
+    private static final String TITLE = "Title: Caf\u00E9 \u201CCr\u00E8me\u201D";
+    private static final String BODY = "The caf\u00E9 serves cr\u00E8me br\u00FBl\u00E9e every day. "
+            + "It\u2019s \u2018the best\u2019 in town, na\u00EFve critics say. The end.";
+
+    @Test
+    void summaryHasEachSentenceOfNonAsciiBody(){
+        CoreDocument doc = scan();
+        String summary = Document.buildSummary(doc, bodyStart(), true, 1024);
+
+        String[] lines = summary.split("\n");
+        assertEquals(3, lines.length, summary);
+        assertTrue(lines[0].startsWith("The caf"), summary);
+        assertTrue(lines[0].endsWith("every day."), summary);
+        assertEquals("The end.", lines[2]);
+    }
+
+    @Test
+    void summaryIsCutAtTheLimit(){
+        CoreDocument doc = scan();
+        for(int limit = 1; limit < 80; limit++){
+            String summary = Document.buildSummary(doc, bodyStart(), true, limit);
+            assertTrue(summary.length() <= limit + 1, summary);
+            assertTrue(summary.startsWith("The caf".substring(0, Math.min(limit, 7))), summary);
+        }
+    }
+
+    @Test
+    void summaryWithoutSentencesIsTheBody(){
+        CoreDocument doc = scan();
+        String summary = Document.buildSummary(doc, bodyStart(), false, 1024);
+        assertEquals(TextScanner.normalize(BODY).trim(), summary);
+    }
+
+    @Test
+    void noSummaryWithoutLimit(){
+        assertNull(Document.buildSummary(scan(), bodyStart(), true, 0));
+    }
+
+    /**
+     * Scans the title and body as a Document file is read.
+     * @return Scanned document.
+     */
+    private static CoreDocument scan(){
+        return TextScanner.getInstance().scan(TITLE + " " + BODY + " ");
+    }
+
+    /**
+     * Gets the offset of the body in the scanned text.
+     * @return Offset of the body.
+     */
+    private static int bodyStart(){
+        return TextScanner.normalize(TITLE).length() + 1;
+    }
+}
@@ -0,0 +1,82 @@
+package cs437.bsu.search.engine.corpus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link TextScanner#isLegalPattern(String)} against the regex it replaced,
+ * which is kept here as the reference. Both are run over edge cases and over
+ * strings generated from the characters each part of the regex treats differently.
+ * @author Cade Peterson
+ */
+class TextScannerTest {
+
+    /** The illegal patterns: numbers, symbols, urls, and words with non english letters. */
+    private static final Pattern ILLEGAL = Pattern.compile(
+            "(\\d+(|.\\d+))|(\\p{Punct}+)|(\\b(https?|ftp|file)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|])|(.*[^a-zA-Z-_`'\u2018]+.*)");
+
+    /** Letters, allowed symbols, illegal characters, line terminators, and url pieces. */
+    private static final String[] PIECES = {
+            "a", "z", "Q", "\u2018", "\u2019", "-", "_", "`", "'", "0", "7", ".", ",", "/", ":", "?", "=", "&",
+            " ", "\t", "\u00E9", "\u00DF", "\u00A0", "\n", "\r", "\r\n", "\u0085", "\u2028", "\u2029",
+            "http://", "https://", "ftp://", "file://", "www", "com", "3.14", "1,000"
+    };
+
+    private static final String[] EDGE_CASES = {
+            "", "a", "-", "'", "`", "_", "\u2018", "\u2019", "--", "-'_`", "\u2018\u2018", "don't", "\u2018twas", "rock'n'roll",
+            "e-mail", "well_known", "`quoted`", "-a-", "a-", "-a",
+            "0", "42", "3.14", "3,14", "1e10", "abc123", "123abc", "v2", "a.b", "a b", "caf\u00E9", "na\u00EFve",
+            "http://example.com", "https://example.com/a?b=1&c=2", "ftp://host/file", "file:///tmp/x",
+            "http://", "http:", "www.example.com", "example.com",
+            "\n", "\r", "\r\n", "\u0085", "\u2028", "\u2029", "\n\n", "a\n", "\na", "a\nb", "\na\n",
+            "\n-\n", "\n1\n", "\n\n\n", "a\n\nb", "\na\n\n", "1\n2", "-\n-", "\ta\n", "a\r\nb", "\u2028\u2018\u2029"
+    };
+
+    @Test
+    void matchesRegexOnEdgeCases(){
+        for(String token : EDGE_CASES)
+            assertMatchesRegex(token);
+    }
+
+    @Test
+    void matchesRegexOnGeneratedStrings(){
+        Random random = new Random(437);
+        StringBuilder sb = new StringBuilder();
+        for(int n = 0; n < 200_000; n++){
+            sb.setLength(0);
+            int pieces = random.nextInt(8);
+            for(int i = 0; i < pieces; i++)
+                sb.append(PIECES[random.nextInt(PIECES.length)]);
+            assertMatchesRegex(sb.toString());
+        }
+    }
+
+    /**
+     * Asserts the scanner and the regex agree on a token.
+     * @param token Token to check.
+     */
+    private static void assertMatchesRegex(String token){
+        boolean expected = !ILLEGAL.matcher(token).matches();
+        assertEquals(expected, TextScanner.isLegalPattern(token), () -> "Token: " + escape(token));
+    }
+
+    /**
+     * Escapes the characters of a token that don't print.
+     * @param token Token to escape.
+     * @return Printable token.
+     */
+    private static String escape(String token){
+        StringBuilder sb = new StringBuilder("\"");
+        for(char c : token.toCharArray()){
+            if(c < 0x20 || c > 0x7E)
+                sb.append(String.format("\\u%04X", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}